@@ -0,0 +1,319 @@
+package org.nagp.codegen;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generates a {@code <Page>Bindings} class for every page object with {@code @FindBy} fields.
+ *
+ * <p>The generated class implements {@code org.nagp.framework.PageBinder} and assigns each field a
+ * {@code LazyElement} (or {@code LazyElementList}) built from a locator constant, so creating a
+ * page object needs neither reflection nor dynamic proxies. Locators are checked while compiling:
+ * XPath expressions must parse, CSS selectors must be balanced, class names must not be compound
+ * and exactly one strategy must be given. Bound fields must be non-private, non-final instance
+ * fields of type WebElement or List&lt;WebElement&gt;.</p>
+ *
+ * <p>Pages using {@code @FindBys} or {@code @FindAll}, and nested classes, are left to PageFactory.</p>
+ */
+@SupportedAnnotationTypes("org.openqa.selenium.support.FindBy")
+public class PageBindingProcessor extends AbstractProcessor {
+    private static final String FIND_BY = "org.openqa.selenium.support.FindBy";
+    private static final String CACHE_LOOKUP = "org.openqa.selenium.support.CacheLookup";
+    private static final Set<String> UNSUPPORTED = new HashSet<>();
+    private static final Map<String, String> BY_FACTORIES = new LinkedHashMap<>();
+
+    static {
+        UNSUPPORTED.add("org.openqa.selenium.support.FindBys");
+        UNSUPPORTED.add("org.openqa.selenium.support.FindAll");
+        BY_FACTORIES.put("id", "org.openqa.selenium.By.id");
+        BY_FACTORIES.put("name", "org.openqa.selenium.By.name");
+        BY_FACTORIES.put("className", "org.openqa.selenium.By.className");
+        BY_FACTORIES.put("css", "org.openqa.selenium.By.cssSelector");
+        BY_FACTORIES.put("tagName", "org.openqa.selenium.By.tagName");
+        BY_FACTORIES.put("linkText", "org.openqa.selenium.By.linkText");
+        BY_FACTORIES.put("partialLinkText", "org.openqa.selenium.By.partialLinkText");
+        BY_FACTORIES.put("xpath", "org.nagp.framework.LocatorCompiler.compile");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement findBy = processingEnv.getElementUtils().getTypeElement(FIND_BY);
+        if (findBy == null) {
+            return false;
+        }
+        Map<TypeElement, List<VariableElement>> fieldsByPage = new LinkedHashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(findBy)) {
+            if (element.getKind() != ElementKind.FIELD) {
+                continue;
+            }
+            TypeElement page = (TypeElement) element.getEnclosingElement();
+            List<VariableElement> fields = fieldsByPage.get(page);
+            if (fields == null) {
+                fields = new ArrayList<>();
+                fieldsByPage.put(page, fields);
+            }
+            fields.add((VariableElement) element);
+        }
+        for (Map.Entry<TypeElement, List<VariableElement>> page : fieldsByPage.entrySet()) {
+            generate(page.getKey(), page.getValue());
+        }
+        return false;
+    }
+
+    private void generate(TypeElement page, List<VariableElement> fields) {
+        Messager messager = processingEnv.getMessager();
+        if (page.getNestingKind() != NestingKind.TOP_LEVEL || usesUnsupportedAnnotations(page)) {
+            messager.printMessage(Diagnostic.Kind.NOTE, "No generated bindings for " + page
+                    + ", it is initialised by PageFactory", page);
+            return;
+        }
+        List<String> constants = new ArrayList<>();
+        List<String> assignments = new ArrayList<>();
+        Set<String> constantNames = new TreeSet<>();
+        boolean valid = true;
+        for (VariableElement field : fields) {
+            String fieldName = field.getSimpleName().toString();
+            String elementClass = elementClass(field);
+            String locator = locatorExpression(field);
+            if (elementClass == null || locator == null) {
+                valid = false;
+                continue;
+            }
+            String constant = constantName(fieldName, constantNames);
+            constants.add("    private static final org.openqa.selenium.By " + constant + " = " + locator + ";");
+            assignments.add("        page." + fieldName + " = new " + elementClass + "(searchContext, " + constant
+                    + ", " + (hasAnnotation(field, CACHE_LOOKUP) ? "true" : "false") + ");");
+        }
+        if (valid) {
+            write(page, constants, assignments);
+        }
+    }
+
+    private void write(TypeElement page, List<String> constants, List<String> assignments) {
+        Elements elementUtils = processingEnv.getElementUtils();
+        PackageElement pkg = elementUtils.getPackageOf(page);
+        String pageName = page.getSimpleName().toString();
+        String bindingsName = pageName + "Bindings";
+        String qualifiedName = pkg.isUnnamed() ? bindingsName : pkg.getQualifiedName() + "." + bindingsName;
+        try {
+            JavaFileObject source = processingEnv.getFiler().createSourceFile(qualifiedName, page);
+            try (Writer writer = source.openWriter(); PrintWriter out = new PrintWriter(writer)) {
+                if (!pkg.isUnnamed()) {
+                    out.println("package " + pkg.getQualifiedName() + ";");
+                    out.println();
+                }
+                out.println("/** Generated by " + getClass().getName() + " from the @FindBy fields of "
+                        + pageName + ". Do not edit. */");
+                out.println("public final class " + bindingsName + " implements org.nagp.framework.PageBinder<"
+                        + pageName + "> {");
+                for (String constant : constants) {
+                    out.println(constant);
+                }
+                out.println();
+                out.println("    @Override");
+                out.println("    public void bind(" + pageName + " page, org.openqa.selenium.SearchContext searchContext) {");
+                for (String assignment : assignments) {
+                    out.println(assignment);
+                }
+                out.println("    }");
+                out.println("}");
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write " + qualifiedName + ": " + e.getMessage(), page);
+        }
+    }
+
+    /** @return implementation class to assign, or null (with an error) if the field cannot be bound */
+    private String elementClass(VariableElement field) {
+        Messager messager = processingEnv.getMessager();
+        Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)
+                || modifiers.contains(Modifier.STATIC)) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                    "@FindBy field must be a non-private, non-final instance field", field);
+            return null;
+        }
+        Elements elementUtils = processingEnv.getElementUtils();
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror webElement = elementUtils.getTypeElement("org.openqa.selenium.WebElement").asType();
+        TypeMirror listOfWebElements = types.getDeclaredType(elementUtils.getTypeElement("java.util.List"), webElement);
+        if (types.isSameType(field.asType(), webElement)) {
+            return "org.nagp.framework.LazyElement";
+        }
+        if (types.isSameType(field.asType(), listOfWebElements)) {
+            return "org.nagp.framework.LazyElementList";
+        }
+        messager.printMessage(Diagnostic.Kind.ERROR, "@FindBy field must be a WebElement or List<WebElement>", field);
+        return null;
+    }
+
+    /** @return Java expression creating the By, or null (with an error) if the locator is invalid */
+    private String locatorExpression(VariableElement field) {
+        Messager messager = processingEnv.getMessager();
+        AnnotationMirror findBy = annotation(field, FIND_BY);
+        Map<String, String> values = new LinkedHashMap<>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : findBy.getElementValues().entrySet()) {
+            values.put(entry.getKey().getSimpleName().toString(), String.valueOf(entry.getValue().getValue()));
+        }
+        String how = values.remove("how");
+        String using = values.remove("using");
+        if (how != null && !"UNSET".equals(how)) {
+            values.put(howToAttribute(how), using == null ? "" : using);
+        }
+        if (values.size() != 1) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                    "@FindBy must specify exactly one locator strategy, found " + values.keySet(), field, findBy);
+            return null;
+        }
+        Map.Entry<String, String> strategy = values.entrySet().iterator().next();
+        String error = validate(strategy.getKey(), strategy.getValue());
+        if (error != null) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Invalid locator '" + strategy.getValue() + "': " + error,
+                    field, findBy);
+            return null;
+        }
+        return BY_FACTORIES.get(strategy.getKey()) + "("
+                + processingEnv.getElementUtils().getConstantExpression(strategy.getValue()) + ")";
+    }
+
+    /** @return description of what is wrong with the locator, or null if it looks valid */
+    static String validate(String strategy, String value) {
+        if (value.trim().isEmpty()) {
+            return "locator is empty";
+        }
+        if (!BY_FACTORIES.containsKey(strategy)) {
+            return "unsupported strategy " + strategy;
+        }
+        if ("xpath".equals(strategy)) {
+            try {
+                XPathFactory.newInstance().newXPath().compile(value);
+            } catch (XPathExpressionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                return "not a valid XPath expression (" + cause.getMessage() + ")";
+            }
+        } else if ("css".equals(strategy)) {
+            return unbalanced(value);
+        } else if ("className".equals(strategy) && value.trim().matches(".*\\s.*")) {
+            return "compound class names are not permitted, use css instead";
+        }
+        return null;
+    }
+
+    private static String unbalanced(String css) {
+        int brackets = 0;
+        int parentheses = 0;
+        char quote = 0;
+        for (char c : css.toCharArray()) {
+            if (quote != 0) {
+                quote = c == quote ? 0 : quote;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[') {
+                brackets++;
+            } else if (c == ']' && --brackets < 0) {
+                return "unexpected ']'";
+            } else if (c == '(') {
+                parentheses++;
+            } else if (c == ')' && --parentheses < 0) {
+                return "unexpected ')'";
+            }
+        }
+        if (quote != 0) {
+            return "unterminated string";
+        }
+        return brackets != 0 || parentheses != 0 ? "unbalanced brackets" : null;
+    }
+
+    private static String howToAttribute(String how) {
+        switch (how) {
+            case "CLASS_NAME":
+                return "className";
+            case "CSS":
+                return "css";
+            case "ID":
+                return "id";
+            case "LINK_TEXT":
+                return "linkText";
+            case "NAME":
+                return "name";
+            case "PARTIAL_LINK_TEXT":
+                return "partialLinkText";
+            case "TAG_NAME":
+                return "tagName";
+            case "XPATH":
+                return "xpath";
+            default:
+                return how;
+        }
+    }
+
+    private boolean usesUnsupportedAnnotations(TypeElement page) {
+        for (Element member : page.getEnclosedElements()) {
+            for (AnnotationMirror mirror : member.getAnnotationMirrors()) {
+                if (UNSUPPORTED.contains(mirror.getAnnotationType().toString())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasAnnotation(Element element, String annotationType) {
+        return annotation(element, annotationType) != null;
+    }
+
+    private static AnnotationMirror annotation(Element element, String annotationType) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().toString().equals(annotationType)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static String constantName(String fieldName, Set<String> used) {
+        String name = fieldName.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase();
+        String unique = name;
+        for (int i = 2; !used.add(unique); i++) {
+            unique = name + "_" + i;
+        }
+        return unique;
+    }
+}
@@ -9,6 +9,7 @@ import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.nagp.framework.Helper;
+import org.nagp.metrics.FrameworkEvents;
 
 import java.io.*;
 import java.math.BigDecimal;
@@ -31,6 +32,7 @@ public class ExcelHelper {
       throw new Error(String.format("Unable to open file path given %s", filePath));
     }
 
+    FrameworkEvents.ExcelRead event = FrameworkEvents.beginExcelRead(filePath);
     try {
       if (filePath.endsWith("xlsx")) {
         workbook = new XSSFWorkbook(input);
@@ -39,6 +41,8 @@ public class ExcelHelper {
       }
     } catch (IOException e) {
       throw new Error(String.format("Unable to retrieve workbook in filepath %s", filePath));
+    } finally {
+      FrameworkEvents.end(event);
     }
 
     return workbook;
@@ -116,7 +120,6 @@ public class ExcelHelper {
     }
     catch (IOException e) {
       logger.warn("IOException on updateExcel method",e);
-      e.printStackTrace();
     }
     catch (Exception e) {
       logger.error("Unexpected exception on updateExcel method",e);
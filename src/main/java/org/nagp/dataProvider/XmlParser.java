@@ -2,6 +2,7 @@ package org.nagp.dataProvider;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.nagp.metrics.FrameworkEvents;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -49,14 +50,14 @@ public class XmlParser {
     if (fileStream == null) {
       LOGGER.error("Problem reading the XML data file! Check to see if the file exists.");
     } else {
+      FrameworkEvents.XmlParse event = FrameworkEvents.beginXmlParse(filePath, tagname);
       try {
         DocumentBuilderFactory sourceFactory = DocumentBuilderFactory.newInstance();
         try {
           DocumentBuilder sourceBuilder = sourceFactory.newDocumentBuilder();
           sourceDocument = sourceBuilder.parse(fileStream);
         } catch (ParserConfigurationException | SAXException | IOException e) {
-          LOGGER.error("Problem reading the XML data file!");
-          e.printStackTrace();
+          LOGGER.error("Problem reading the XML data file!", e);
         }
 
         // If we parsed the document OK, we now set the class currentDocument value
@@ -96,6 +97,7 @@ public class XmlParser {
         } catch (IOException e) {
           LOGGER.debug("Error closing the stream.", e.getMessage());
         }
+        FrameworkEvents.end(event);
       }
     }
     return result;
@@ -312,7 +314,7 @@ public class XmlParser {
       try {
         return nodes.get(index);
       } catch (Exception e) {
-        e.printStackTrace();
+        LOGGER.error("No node at index " + index, e);
       }
       return null;
     }
@@ -0,0 +1,176 @@
+package org.nagp.framework;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.metrics.TraceTimeline;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chromium.HasCdp;
+import org.openqa.selenium.json.Json;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cookies, local and session storage and URL of a browser session, captured after a setup flow
+ * and restored into the same or another session instead of repeating the flow.
+ *
+ * <p>Snapshots are kept by key for the running suite (see {@link TestDriver#startFrom}). On
+ * Chromium browsers cookies of all sites are captured and restored through DevTools and the
+ * storage is put in place before the page's own scripts run, so a restore costs one page load.
+ * Other browsers only keep the cookies of the current site and load the page twice. A session that
+ * is still on the page a restore loaded, untouched since (see {@link SessionReset}), is left as it
+ * is.</p>
+ */
+public final class BrowserStateSnapshot {
+    private static final Logger logger = LogManager.getLogger(BrowserStateSnapshot.class);
+    private static final Map<String, BrowserStateSnapshot> snapshots = new ConcurrentHashMap<>();
+    /** Fields of a DevTools cookie that Network.setCookies accepts back. */
+    private static final List<String> COOKIE_PARAMS = Arrays.asList("name", "value", "domain", "path", "secure",
+            "httpOnly", "sameSite", "expires", "priority", "sourceScheme", "sourcePort");
+    private static final String READ_STORAGE_SCRIPT =
+            "var read = function(storage) { var items = {};"
+            + " for (var i = 0; i < storage.length; i++) { items[storage.key(i)] = storage.getItem(storage.key(i)); }"
+            + " return items; };"
+            + "return {local: read(window.localStorage), session: read(window.sessionStorage)};";
+    /** Fills the storage of the page; arguments[0] and [1] are the local and session storage items. */
+    private static final String WRITE_STORAGE_SCRIPT =
+            "var write = function(storage, items) { for (var key in items) { storage.setItem(key, items[key]); } };"
+            + "write(window.localStorage, arguments[0]); write(window.sessionStorage, arguments[1]);";
+
+    private final String url;
+    private final List<Map<String, Object>> cdpCookies;
+    private final List<Cookie> cookies;
+    private final Map<String, String> localStorage;
+    private final Map<String, String> sessionStorage;
+
+    private BrowserStateSnapshot(String url, List<Map<String, Object>> cdpCookies, List<Cookie> cookies,
+                                 Map<String, String> localStorage, Map<String, String> sessionStorage) {
+        this.url = url;
+        this.cdpCookies = cdpCookies;
+        this.cookies = cookies;
+        this.localStorage = localStorage;
+        this.sessionStorage = sessionStorage;
+    }
+
+    /** @return the snapshot captured under the key in this suite, or null */
+    public static BrowserStateSnapshot get(String key) {
+        return snapshots.get(key);
+    }
+
+    public static void put(String key, BrowserStateSnapshot snapshot) {
+        snapshots.put(key, snapshot);
+    }
+
+    /** Forget all snapshots; called when a suite starts. */
+    public static void clear() {
+        snapshots.clear();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /** Capture the state of a session.
+     *
+     * @param driver driver the tests use
+     * @param sessionDriver undecorated driver of the same session, used for DevTools commands
+     * @return the snapshot
+     */
+    @SuppressWarnings("unchecked")
+    public static BrowserStateSnapshot capture(WebDriver driver, WebDriver sessionDriver) {
+        try (TraceTimeline.Span ignored = TraceTimeline.span("session", "capture state")) {
+            Map<String, Map<String, String>> storage = (Map<String, Map<String, String>>)
+                    ((JavascriptExecutor) driver).executeScript(READ_STORAGE_SCRIPT);
+            List<Map<String, Object>> cdpCookies = null;
+            List<Cookie> cookies = null;
+            if (sessionDriver instanceof HasCdp) {
+                cdpCookies = new ArrayList<>();
+                for (Map<String, Object> cookie : (List<Map<String, Object>>) ((HasCdp) sessionDriver)
+                        .executeCdpCommand("Network.getAllCookies", Collections.<String, Object>emptyMap())
+                        .get("cookies")) {
+                    Map<String, Object> param = new LinkedHashMap<>();
+                    for (String name : COOKIE_PARAMS) {
+                        if (cookie.containsKey(name)) {
+                            param.put(name, cookie.get(name));
+                        }
+                    }
+                    if (Boolean.TRUE.equals(cookie.get("session"))) {
+                        param.remove("expires");
+                    }
+                    cdpCookies.add(param);
+                }
+            } else {
+                cookies = new ArrayList<>(driver.manage().getCookies());
+            }
+            BrowserStateSnapshot snapshot = new BrowserStateSnapshot(driver.getCurrentUrl(), cdpCookies, cookies,
+                    new HashMap<>(storage.get("local")), new HashMap<>(storage.get("session")));
+            logger.info("Captured browser state at {}: {} cookies, {} local and {} session storage items",
+                    snapshot.url, cdpCookies != null ? cdpCookies.size() : cookies.size(),
+                    snapshot.localStorage.size(), snapshot.sessionStorage.size());
+            return snapshot;
+        }
+    }
+
+    /** Replace the state of a session with this snapshot and open its URL.
+     *
+     * @param driver driver the tests use, so that listeners see the navigation
+     * @param sessionDriver undecorated driver of the same session, used for DevTools commands
+     * @return true if the restore had to load the page
+     */
+    public boolean restore(WebDriver driver, WebDriver sessionDriver) {
+        try (TraceTimeline.Span ignored = TraceTimeline.span("session", "restore state", url)) {
+            SessionReset.closeExtraWindows(driver);
+            String currentUrl = driver.getCurrentUrl();
+            if (SessionReset.sameDocument(currentUrl, url) && SessionReset.isFresh(driver)) {
+                logger.debug("Session still on the restored {}, no restore needed", url);
+                return false;
+            }
+            SessionReset.clearBrowserState(driver, sessionDriver, currentUrl, url);
+            if (sessionDriver instanceof HasCdp) {
+                restoreThroughDevTools(driver, (HasCdp) sessionDriver);
+            } else {
+                driver.get(url);
+                for (Cookie cookie : cookies) {
+                    try {
+                        driver.manage().addCookie(cookie);
+                    } catch (WebDriverException e) {
+                        logger.debug("Unable to restore cookie {}", cookie.getName(), e);
+                    }
+                }
+                ((JavascriptExecutor) driver).executeScript(WRITE_STORAGE_SCRIPT, localStorage, sessionStorage);
+                driver.navigate().refresh();
+            }
+            SessionReset.markFresh(driver);
+            return true;
+        }
+    }
+
+    private void restoreThroughDevTools(WebDriver driver, HasCdp cdp) {
+        Map<String, Object> cookieParams = new HashMap<>();
+        cookieParams.put("cookies", cdpCookies);
+        cdp.executeCdpCommand("Network.setCookies", cookieParams);
+        Json json = new Json();
+        Map<String, Object> scriptParams = new HashMap<>();
+        scriptParams.put("source", "if (window === window.top && location.origin === " + json.toJson(
+                SessionReset.origin(url)) + ") { (function(local, session) { " + WRITE_STORAGE_SCRIPT
+                .replace("arguments[0]", "local").replace("arguments[1]", "session") + " })("
+                + json.toJson(localStorage) + ", " + json.toJson(sessionStorage) + "); }");
+        Object identifier = cdp.executeCdpCommand("Page.addScriptToEvaluateOnNewDocument", scriptParams)
+                .get("identifier");
+        try {
+            driver.get(url);
+        } finally {
+            cdp.executeCdpCommand("Page.removeScriptToEvaluateOnNewDocument",
+                    Collections.<String, Object>singletonMap("identifier", identifier));
+        }
+    }
+}
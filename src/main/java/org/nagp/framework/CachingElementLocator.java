@@ -0,0 +1,103 @@
+package org.nagp.framework;
+
+import org.nagp.utils.WaitTool;
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.pagefactory.AbstractAnnotations;
+import org.openqa.selenium.support.pagefactory.ElementLocator;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * ElementLocator that keeps the resolved element for as long as the page generation of the driver
+ * does not change, instead of running findElement on every access of a page object field.
+ *
+ * <p>Without a tracked driver (see {@link PageGeneration}) it behaves like DefaultElementLocator.
+ * Lists are looked up on every access, because results that render after the page settles add
+ * elements without starting a new generation. Fields marked with {@code @CacheLookup} are cached
+ * for the lifetime of the page object.</p>
+ */
+public class CachingElementLocator implements ElementLocator {
+    private final SearchContext searchContext;
+    private final By by;
+    private final boolean cacheForever;
+
+    private WebElement cachedElement;
+    private long elementGeneration;
+    private List<WebElement> cachedElements;
+
+    public CachingElementLocator(SearchContext searchContext, AbstractAnnotations annotations) {
+        this(searchContext, annotations.buildBy(), annotations.isLookupCached());
+    }
+
+    public CachingElementLocator(SearchContext searchContext, By by, boolean cacheForever) {
+        this.searchContext = searchContext;
+        this.by = by;
+        this.cacheForever = cacheForever;
+    }
+
+    @Override
+    public synchronized WebElement findElement() {
+        PageGeneration pageGeneration = PageGeneration.of(searchContext);
+        long generation = pageGeneration == null ? -1 : pageGeneration.current(searchContext);
+        if (cachedElement != null && (cacheForever || (pageGeneration != null && generation == elementGeneration))) {
+            return cachedElement;
+        }
+        WebElement element = searchContext.findElement(by);
+        if (cacheForever || pageGeneration != null) {
+            cachedElement = element;
+            elementGeneration = generation;
+        }
+        return element;
+    }
+
+    @Override
+    public synchronized List<WebElement> findElements() {
+        if (cachedElements != null && cacheForever) {
+            return cachedElements;
+        }
+        List<WebElement> elements = searchContext.findElements(by);
+        if (cacheForever) {
+            cachedElements = elements;
+        }
+        return elements;
+    }
+
+    /** Drop the cached element and look it up once more without waiting for it.
+     *
+     * @return the element, or null if it is not on the page right now
+     */
+    public synchronized WebElement resolveAgain() {
+        cachedElement = null;
+        cachedElements = null;
+        List<WebElement> elements;
+        if (searchContext instanceof WebDriver) {
+            WebDriver driver = (WebDriver) searchContext;
+            driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
+            try {
+                elements = driver.findElements(by);
+            } finally {
+                driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(WaitTool.DEFAULT_WAIT_4_PAGE));
+            }
+        } else {
+            elements = searchContext.findElements(by);
+        }
+        if (elements.isEmpty()) {
+            return null;
+        }
+        PageGeneration pageGeneration = PageGeneration.of(searchContext);
+        if (pageGeneration != null) {
+            cachedElement = elements.get(0);
+            elementGeneration = pageGeneration.current(searchContext);
+        }
+        return elements.get(0);
+    }
+
+    @Override
+    public String toString() {
+        return "CachingElementLocator '" + by + "'";
+    }
+}
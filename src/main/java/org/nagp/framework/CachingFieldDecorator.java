@@ -0,0 +1,74 @@
+package org.nagp.framework;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsElement;
+import org.openqa.selenium.interactions.Locatable;
+import org.openqa.selenium.support.pagefactory.DefaultFieldDecorator;
+import org.openqa.selenium.support.pagefactory.ElementLocator;
+import org.openqa.selenium.support.pagefactory.ElementLocatorFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Field decorator whose element proxies recover from stale handles: when a cached element turns
+ * out to be stale the call is repeated once on a freshly resolved element, without waiting for a
+ * timeout. Only if the element is gone for good the StaleElementReferenceException is rethrown.
+ */
+public class CachingFieldDecorator extends DefaultFieldDecorator {
+
+    public CachingFieldDecorator(ElementLocatorFactory factory) {
+        super(factory);
+    }
+
+    @Override
+    protected WebElement proxyForLocator(ClassLoader loader, ElementLocator locator) {
+        return (WebElement) Proxy.newProxyInstance(loader,
+                new Class[]{WebElement.class, WrapsElement.class, Locatable.class},
+                new StaleRecoveringHandler(locator));
+    }
+
+    private static class StaleRecoveringHandler implements InvocationHandler {
+        private static final Logger logger = LogManager.getLogger(StaleRecoveringHandler.class);
+        private final ElementLocator locator;
+
+        StaleRecoveringHandler(ElementLocator locator) {
+            this.locator = locator;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("toString".equals(method.getName()) && method.getParameterCount() == 0) {
+                // Describe the locator without a lookup; WaitTool.locatorOf relies on this format.
+                return "Proxy element for: " + locator;
+            }
+            WebElement element = locator.findElement();
+            if ("getWrappedElement".equals(method.getName())) {
+                return element;
+            }
+            try {
+                return method.invoke(element, args);
+            } catch (InvocationTargetException e) {
+                if (!(e.getCause() instanceof StaleElementReferenceException)
+                        || !(locator instanceof CachingElementLocator)) {
+                    throw e.getCause();
+                }
+                WebElement fresh = ((CachingElementLocator) locator).resolveAgain();
+                if (fresh == null) {
+                    throw e.getCause();
+                }
+                logger.debug("Recovered stale element {}", locator);
+                try {
+                    return method.invoke(fresh, args);
+                } catch (InvocationTargetException retry) {
+                    throw retry.getCause();
+                }
+            }
+        }
+    }
+}
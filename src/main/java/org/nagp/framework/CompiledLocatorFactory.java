@@ -0,0 +1,44 @@
+package org.nagp.framework;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.FindBy;
+import org.openqa.selenium.support.pagefactory.Annotations;
+import org.openqa.selenium.support.pagefactory.ElementLocator;
+import org.openqa.selenium.support.pagefactory.ElementLocatorFactory;
+
+import java.lang.reflect.Field;
+
+/**
+ * ElementLocatorFactory for page objects whose {@code @FindBy(xpath=...)} locators are compiled to
+ * CSS selectors by {@link LocatorCompiler} when the page is initialised. Resolved elements are
+ * cached per page generation by {@link CachingElementLocator}.
+ *
+ * <pre>
+ *   PageFactory.initElements(new CachingFieldDecorator(new CompiledLocatorFactory(driver)), this);
+ * </pre>
+ *
+ * Page objects extending WebElements use {@link WebElements#initElements(WebDriver)} instead.
+ */
+public class CompiledLocatorFactory implements ElementLocatorFactory {
+    private final SearchContext searchContext;
+
+    public CompiledLocatorFactory(SearchContext searchContext) {
+        this.searchContext = searchContext;
+    }
+
+    @Override
+    public ElementLocator createLocator(Field field) {
+        return new CachingElementLocator(searchContext, new Annotations(field) {
+            @Override
+            public By buildBy() {
+                FindBy findBy = field.getAnnotation(FindBy.class);
+                if (findBy != null && !findBy.xpath().isEmpty()) {
+                    return LocatorCompiler.compile(findBy.xpath());
+                }
+                return super.buildBy();
+            }
+        });
+    }
+}
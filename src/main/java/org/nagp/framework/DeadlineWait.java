@@ -0,0 +1,89 @@
+package org.nagp.framework;
+
+import org.nagp.metrics.CallSites;
+import org.nagp.metrics.FrameworkEvents;
+import org.nagp.metrics.TraceTimeline;
+import org.nagp.metrics.WaitAttribution;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * WebDriverWait that respects the {@link TestDeadline} of the current test.
+ *
+ * <p>Every call to {@link #until(Function)} is limited to the remaining budget and its duration is
+ * charged to the deadline breakdown. A wait that times out because it was cut short by the deadline
+ * fails the test with a {@link TimeBudgetExceededError} instead of a plain TimeoutException.
+ * Without an active deadline it behaves like WebDriverWait. Every wait is reported to
+ * {@link WaitAttribution} with its outcome.</p>
+ */
+public class DeadlineWait extends WebDriverWait {
+    private final Duration timeout;
+    private final String step;
+
+    public DeadlineWait(WebDriver driver, Duration timeout) {
+        this(driver, timeout, null);
+    }
+
+    /**
+     * @param driver driver to wait on
+     * @param timeout timeout asked for by the caller
+     * @param step description used in the deadline breakdown; defaults to the condition's description
+     */
+    public DeadlineWait(WebDriver driver, Duration timeout, String step) {
+        super(driver, timeout);
+        this.timeout = timeout;
+        this.step = step;
+    }
+
+    @Override
+    public <V> V until(Function<? super WebDriver, V> isTrue) {
+        String description = step != null ? step : describe(isTrue);
+        long start = System.nanoTime();
+        WaitAttribution.Outcome outcome = WaitAttribution.Outcome.ERROR;
+        FrameworkEvents.Wait event = FrameworkEvents.beginWait(description);
+        try (TraceTimeline.Span ignored = TraceTimeline.span("wait", "until", description)) {
+            V result = TestDeadline.current() == null ? super.until(isTrue) : untilDeadline(isTrue, description, start);
+            outcome = WaitAttribution.Outcome.SUCCESS;
+            return result;
+        } catch (TimeBudgetExceededError e) {
+            outcome = WaitAttribution.Outcome.BUDGET_EXCEEDED;
+            throw e;
+        } catch (TimeoutException e) {
+            outcome = WaitAttribution.Outcome.TIMEOUT;
+            throw e;
+        } finally {
+            WaitAttribution.getInstance().record(description, start, outcome);
+            FrameworkEvents.endWait(event, outcome);
+        }
+    }
+
+    private <V> V untilDeadline(Function<? super WebDriver, V> isTrue, String description, long start) {
+        Duration budgeted = TestDeadline.clamp(timeout, description);
+        withTimeout(budgeted);
+        try {
+            return super.until(isTrue);
+        } catch (TimeoutException e) {
+            if (budgeted.compareTo(timeout) < 0) {
+                throw TestDeadline.exceeded(description);
+            }
+            throw e;
+        } finally {
+            TestDeadline.charge(description, start);
+        }
+    }
+
+    /** ExpectedConditions describe themselves; lambdas are named after the method that waited. */
+    private static String describe(Object condition) {
+        String description = String.valueOf(condition);
+        if (!description.contains("$$Lambda")) {
+            return description;
+        }
+        return CallSites.nearest(className -> className.startsWith("org.nagp.")
+                && !className.startsWith(DeadlineWait.class.getName()))
+                .map(caller -> "wait in " + caller).orElse("wait");
+    }
+}
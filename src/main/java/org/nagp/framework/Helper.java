@@ -92,22 +92,22 @@ public class Helper {
             try {
                 Files.createDirectory(Paths.get(jarFileDirectory));
             } catch (FileAlreadyExistsException e) {
-                System.out.println(String.format("file : %s already exists: ignore the error", jarFilePath));
+                logger.debug(String.format("file : %s already exists: ignore the error", jarFilePath));
             } catch (IOException e) {
-                e.printStackTrace();
+                logger.error("Unable to create directory " + jarFileDirectory, e);
             }
             InputStream is = getClass().getClassLoader().getResourceAsStream(jarFilePath);
             if (is == null) {
-                System.out.println("input stream is null");
+                logger.error("input stream is null");
             }
-            System.out.println("getting file from jar :" + jarFilePath);
+            logger.info("getting file from jar :" + jarFilePath);
             File targetFile = new File(jarFilePath);
             try {
                 Files.copy(is, targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
             } catch (FileAlreadyExistsException e) {
-                System.out.println(String.format("file : %s already exists: ignore the error", targetFile));
+                logger.debug(String.format("file : %s already exists: ignore the error", targetFile));
             } catch (IOException| NullPointerException e) {
-                e.printStackTrace();
+                logger.error("Unable to copy " + jarFilePath + " from the jar", e);
             }
             IOUtils.closeQuietly(is);
             return targetFile;
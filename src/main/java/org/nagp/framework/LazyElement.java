@@ -0,0 +1,190 @@
+package org.nagp.framework;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsElement;
+import org.openqa.selenium.interactions.Coordinates;
+import org.openqa.selenium.interactions.Locatable;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * WebElement bound to a locator by generated page bindings. It resolves the element through a
+ * {@link CachingElementLocator} when it is used, and repeats a call once on a freshly resolved
+ * element if the cached one went stale, the same way the proxies of {@link CachingFieldDecorator} do.
+ */
+public class LazyElement implements WebElement, WrapsElement, Locatable {
+    private final CachingElementLocator locator;
+
+    public LazyElement(SearchContext searchContext, By by, boolean cacheForever) {
+        this.locator = new CachingElementLocator(searchContext, by, cacheForever);
+    }
+
+    private <T> T call(Function<WebElement, T> action) {
+        WebElement element = locator.findElement();
+        try {
+            return action.apply(element);
+        } catch (StaleElementReferenceException e) {
+            WebElement fresh = locator.resolveAgain();
+            if (fresh == null) {
+                throw e;
+            }
+            return action.apply(fresh);
+        }
+    }
+
+    @Override
+    public WebElement getWrappedElement() {
+        return locator.findElement();
+    }
+
+    @Override
+    public void click() {
+        call(element -> {
+            element.click();
+            return null;
+        });
+    }
+
+    @Override
+    public void submit() {
+        call(element -> {
+            element.submit();
+            return null;
+        });
+    }
+
+    @Override
+    public void sendKeys(CharSequence... keysToSend) {
+        call(element -> {
+            element.sendKeys(keysToSend);
+            return null;
+        });
+    }
+
+    @Override
+    public void clear() {
+        call(element -> {
+            element.clear();
+            return null;
+        });
+    }
+
+    @Override
+    public String getTagName() {
+        return call(WebElement::getTagName);
+    }
+
+    @Override
+    public String getDomProperty(String name) {
+        return call(element -> element.getDomProperty(name));
+    }
+
+    @Override
+    public String getDomAttribute(String name) {
+        return call(element -> element.getDomAttribute(name));
+    }
+
+    @Override
+    public String getAttribute(String name) {
+        return call(element -> element.getAttribute(name));
+    }
+
+    @Override
+    public String getAriaRole() {
+        return call(WebElement::getAriaRole);
+    }
+
+    @Override
+    public String getAccessibleName() {
+        return call(WebElement::getAccessibleName);
+    }
+
+    @Override
+    public boolean isSelected() {
+        return call(WebElement::isSelected);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return call(WebElement::isEnabled);
+    }
+
+    @Override
+    public String getText() {
+        return call(WebElement::getText);
+    }
+
+    @Override
+    public List<WebElement> findElements(By by) {
+        return call(element -> element.findElements(by));
+    }
+
+    @Override
+    public WebElement findElement(By by) {
+        return call(element -> element.findElement(by));
+    }
+
+    @Override
+    public SearchContext getShadowRoot() {
+        return call(WebElement::getShadowRoot);
+    }
+
+    @Override
+    public boolean isDisplayed() {
+        return call(WebElement::isDisplayed);
+    }
+
+    @Override
+    public Point getLocation() {
+        return call(WebElement::getLocation);
+    }
+
+    @Override
+    public Dimension getSize() {
+        return call(WebElement::getSize);
+    }
+
+    @Override
+    public Rectangle getRect() {
+        return call(WebElement::getRect);
+    }
+
+    @Override
+    public String getCssValue(String propertyName) {
+        return call(element -> element.getCssValue(propertyName));
+    }
+
+    @Override
+    public <X> X getScreenshotAs(OutputType<X> target) {
+        return call(element -> element.getScreenshotAs(target));
+    }
+
+    @Override
+    public Coordinates getCoordinates() {
+        return call(element -> ((Locatable) element).getCoordinates());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other || getWrappedElement().equals(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return getWrappedElement().hashCode();
+    }
+
+    /** Describes the locator without a lookup; WaitTool.locatorOf relies on this format. */
+    @Override
+    public String toString() {
+        return "Proxy element for: " + locator;
+    }
+}
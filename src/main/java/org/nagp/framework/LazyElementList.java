@@ -0,0 +1,31 @@
+package org.nagp.framework;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+
+import java.util.AbstractList;
+
+/** List of WebElements bound to a locator by generated page bindings, resolved when it is used. */
+public class LazyElementList extends AbstractList<WebElement> {
+    private final CachingElementLocator locator;
+
+    public LazyElementList(SearchContext searchContext, By by, boolean cacheForever) {
+        this.locator = new CachingElementLocator(searchContext, by, cacheForever);
+    }
+
+    @Override
+    public WebElement get(int index) {
+        return locator.findElements().get(index);
+    }
+
+    @Override
+    public int size() {
+        return locator.findElements().size();
+    }
+
+    @Override
+    public String toString() {
+        return "Proxy element list for: " + locator;
+    }
+}
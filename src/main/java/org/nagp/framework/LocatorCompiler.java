@@ -0,0 +1,394 @@
+package org.nagp.framework;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.metrics.FrameworkEvents;
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites XPath locators into CSS selectors where CSS can express them.
+ *
+ * <p>Supported are paths of {@code /} and {@code //} steps with a tag name or {@code *} and the
+ * predicates {@code @a}, {@code @a='v'}, {@code contains(@a,'v')}, {@code starts-with(@a,'v')},
+ * a leading position on named tags, combined with {@code and}, as well as unions with {@code |}.
+ * Anything else (text(), parent or sibling axes, functions) stays XPath.</p>
+ *
+ * <p>{@link #compile(String)} returns a By that still prints as the original XPath, so learned
+ * timings and reports keep their keys, but looks elements up with the CSS selector. The first
+ * {@code locatorComparisonSamples} lookups of each locator, and every lookup where CSS finds
+ * nothing, also run the XPath to time it and to verify both find the same elements; on a mismatch
+ * the locator falls back to XPath for good.
+ * {@link #lookupReport()} lists the lookup times per locator under both strategies.</p>
+ */
+public class LocatorCompiler {
+    private static final Logger logger = LogManager.getLogger(LocatorCompiler.class);
+    private static final Pattern NAME = Pattern.compile("\\*|[A-Za-z_][\\w-]*");
+    private static final Pattern ATTRIBUTE = Pattern.compile("@([A-Za-z_][\\w-]*)");
+    private static final Pattern ATTRIBUTE_EQUALS =
+            Pattern.compile("@([A-Za-z_][\\w-]*)\\s*=\\s*('[^']*'|\"[^\"]*\")");
+    private static final Pattern ATTRIBUTE_FUNCTION =
+            Pattern.compile("(contains|starts-with)\\(\\s*@([A-Za-z_][\\w-]*)\\s*,\\s*('[^']+'|\"[^\"]+\")\\s*\\)");
+    private static final Pattern POSITION = Pattern.compile("[1-9]\\d*");
+
+    private static final boolean enabled;
+    private static final int comparisonSamples;
+    private static final Map<String, By> compiled = new ConcurrentHashMap<>();
+    /** Per XPath: css lookups, css nanos, xpath lookups, xpath nanos. */
+    private static final Map<String, long[]> lookupTimes = new ConcurrentHashMap<>();
+
+    static {
+        Properties configProps = new Helper().readConfig();
+        enabled = Boolean.parseBoolean(configProps.getProperty("compileXpathToCss", "false").trim());
+        comparisonSamples = Integer.parseInt(configProps.getProperty("locatorComparisonSamples", "3").trim());
+    }
+
+    private LocatorCompiler() {
+    }
+
+    /** By for an XPath locator: CSS backed if the XPath can be rewritten, plain By.xpath otherwise.
+     *
+     * @param xpath XPath locator
+     * @return locator to use for lookups; its toString() is always the XPath form
+     */
+    public static By compile(String xpath) {
+        if (!enabled) {
+            return xpath(xpath);
+        }
+        return compiled.computeIfAbsent(xpath, key -> {
+            String css = toCss(key);
+            if (css == null) {
+                logger.debug("Keeping XPath {}", key);
+                return xpath(key);
+            }
+            logger.debug("Compiled XPath {} to CSS {}", key, css);
+            return new CompiledBy(key, css);
+        });
+    }
+
+    /** Translate an XPath into an equivalent CSS selector.
+     *
+     * @param xpath XPath locator
+     * @return the CSS selector, or null if the XPath uses anything CSS cannot express
+     */
+    public static String toCss(String xpath) {
+        List<String> branches = splitTopLevel(xpath.trim(), "|");
+        if (branches == null) {
+            return null;
+        }
+        StringBuilder css = new StringBuilder();
+        for (String branch : branches) {
+            String compiledBranch = pathToCss(branch.trim());
+            if (compiledBranch == null) {
+                return null;
+            }
+            css.append(css.length() == 0 ? "" : ", ").append(compiledBranch);
+        }
+        return css.toString();
+    }
+
+    /** @return one line per compiled locator that was looked up, with mean lookup time per strategy */
+    public static List<String> lookupReport() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : new TreeMap<>(lookupTimes).entrySet()) {
+            long[] times = entry.getValue();
+            double cssMillis;
+            double xpathMillis;
+            synchronized (times) {
+                cssMillis = mean(times[1], times[0]);
+                xpathMillis = mean(times[3], times[2]);
+            }
+            String speedup = cssMillis > 0 && xpathMillis > 0 ? String.format("x%.2f", xpathMillis / cssMillis) : "-";
+            By by = compiled.get(entry.getKey());
+            lines.add(String.format("css %4dx %8.2f ms | xpath %4dx %8.2f ms | %6s | %s -> %s", times[0], cssMillis,
+                    times[2], xpathMillis, speedup, entry.getKey(),
+                    by instanceof CompiledBy ? ((CompiledBy) by).describeCss() : "xpath"));
+        }
+        return lines;
+    }
+
+    private static double mean(long nanos, long count) {
+        return count == 0 ? 0 : nanos / 1e6 / count;
+    }
+
+    private static void recordLookup(String xpath, boolean css, long startNanos) {
+        long[] times = lookupTimes.computeIfAbsent(xpath, key -> new long[4]);
+        synchronized (times) {
+            int offset = css ? 0 : 2;
+            times[offset]++;
+            times[offset + 1] += System.nanoTime() - startNanos;
+        }
+    }
+
+    private static String pathToCss(String path) {
+        StringBuilder css = new StringBuilder();
+        int position = 0;
+        while (position < path.length()) {
+            String combinator;
+            if (path.startsWith("//", position)) {
+                combinator = " ";
+                position += 2;
+            } else if (path.startsWith("/", position) && position > 0) {
+                combinator = " > ";
+                position += 1;
+            } else {
+                // Absolute paths from the document root and relative paths are not supported.
+                return null;
+            }
+            int stepEnd = stepEnd(path, position);
+            if (stepEnd < 0) {
+                return null;
+            }
+            String step = stepToCss(path.substring(position, stepEnd).trim());
+            if (step == null) {
+                return null;
+            }
+            css.append(css.length() == 0 ? "" : combinator).append(step);
+            position = stepEnd;
+        }
+        return css.length() == 0 ? null : css.toString();
+    }
+
+    /** Index of the next '/' outside quotes and brackets, or the end of the path; -1 if unbalanced. */
+    private static int stepEnd(String path, int from) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = from; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (quote != 0) {
+                quote = c == quote ? 0 : quote;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            } else if (c == '/' && depth == 0) {
+                return i;
+            }
+        }
+        return depth == 0 && quote == 0 ? path.length() : -1;
+    }
+
+    private static String stepToCss(String step) {
+        int predicateStart = step.indexOf('[');
+        String name = predicateStart < 0 ? step : step.substring(0, predicateStart).trim();
+        if (!NAME.matcher(name).matches()) {
+            return null;
+        }
+        StringBuilder css = new StringBuilder(name);
+        boolean first = true;
+        int position = predicateStart < 0 ? step.length() : predicateStart;
+        while (position < step.length()) {
+            if (step.charAt(position) != '[') {
+                return null;
+            }
+            int end = predicateEnd(step, position);
+            if (end < 0) {
+                return null;
+            }
+            String predicate = predicateToCss(step.substring(position + 1, end).trim(), first && !"*".equals(name));
+            if (predicate == null) {
+                return null;
+            }
+            css.append(predicate);
+            first = false;
+            position = end + 1;
+            while (position < step.length() && Character.isWhitespace(step.charAt(position))) {
+                position++;
+            }
+        }
+        if (css.length() > 1 && css.charAt(0) == '*') {
+            css.deleteCharAt(0);
+        }
+        return css.toString();
+    }
+
+    private static int predicateEnd(String step, int open) {
+        char quote = 0;
+        for (int i = open + 1; i < step.length(); i++) {
+            char c = step.charAt(i);
+            if (quote != 0) {
+                quote = c == quote ? 0 : quote;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[') {
+                return -1;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** @param positionAllowed a position is only equivalent to :nth-of-type as first predicate of a named step */
+    private static String predicateToCss(String predicate, boolean positionAllowed) {
+        if (positionAllowed && POSITION.matcher(predicate).matches()) {
+            return ":nth-of-type(" + predicate + ")";
+        }
+        List<String> terms = splitTopLevel(predicate, " and ");
+        if (terms == null) {
+            return null;
+        }
+        StringBuilder css = new StringBuilder();
+        for (String term : terms) {
+            term = term.trim();
+            Matcher matcher;
+            if ((matcher = ATTRIBUTE_EQUALS.matcher(term)).matches()) {
+                css.append('[').append(matcher.group(1)).append('=').append(cssString(matcher.group(2))).append(']');
+            } else if ((matcher = ATTRIBUTE_FUNCTION.matcher(term)).matches()) {
+                String operator = "contains".equals(matcher.group(1)) ? "*=" : "^=";
+                css.append('[').append(matcher.group(2)).append(operator).append(cssString(matcher.group(3)))
+                        .append(']');
+            } else if ((matcher = ATTRIBUTE.matcher(term)).matches()) {
+                css.append('[').append(matcher.group(1)).append(']');
+            } else {
+                return null;
+            }
+        }
+        return css.toString();
+    }
+
+    /** Split on a separator outside quotes, brackets and parentheses; null if quotes are unbalanced. */
+    private static List<String> splitTopLevel(String text, String separator) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                quote = c == quote ? 0 : quote;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[' || c == '(') {
+                depth++;
+            } else if (c == ']' || c == ')') {
+                depth--;
+            } else if (depth == 0 && text.startsWith(separator, i)) {
+                parts.add(text.substring(start, i));
+                start = i + separator.length();
+                i = start - 1;
+            }
+        }
+        if (quote != 0 || depth != 0) {
+            return null;
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    /** Turn an XPath string literal into a double quoted CSS string. */
+    private static String cssString(String literal) {
+        String value = literal.substring(1, literal.length() - 1);
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\a ") + "\"";
+    }
+
+    /** Plain XPath locator, reporting its lookups as events while {@code jfrEvents} is on. */
+    private static By xpath(String xpath) {
+        return FrameworkEvents.isEnabled() ? new TracedXpathBy(xpath) : By.xpath(xpath);
+    }
+
+    /** XPath locator that records every lookup as a {@link FrameworkEvents.Lookup}. */
+    private static final class TracedXpathBy extends By {
+        private final String xpath;
+        private final By by;
+
+        TracedXpathBy(String xpath) {
+            this.xpath = xpath;
+            this.by = By.xpath(xpath);
+        }
+
+        @Override
+        public WebElement findElement(SearchContext context) {
+            FrameworkEvents.Lookup event = FrameworkEvents.beginLookup(xpath, "xpath");
+            int found = 0;
+            try {
+                WebElement element = by.findElement(context);
+                found = 1;
+                return element;
+            } finally {
+                FrameworkEvents.endLookup(event, found);
+            }
+        }
+
+        @Override
+        public List<WebElement> findElements(SearchContext context) {
+            FrameworkEvents.Lookup event = FrameworkEvents.beginLookup(xpath, "xpath");
+            List<WebElement> found = by.findElements(context);
+            FrameworkEvents.endLookup(event, found.size());
+            return found;
+        }
+
+        @Override
+        public String toString() {
+            return by.toString();
+        }
+    }
+
+    /** XPath locator that looks elements up through its CSS translation. */
+    private static final class CompiledBy extends By {
+        private final String xpath;
+        private final By css;
+        private final By fallback;
+        private final AtomicInteger comparisons = new AtomicInteger();
+        private volatile boolean cssVerified = true;
+
+        CompiledBy(String xpath, String css) {
+            this.xpath = xpath;
+            this.css = By.cssSelector(css);
+            this.fallback = By.xpath(xpath);
+        }
+
+        @Override
+        public List<WebElement> findElements(SearchContext context) {
+            // Below an element '//' still searches the whole document in XPath but not in CSS.
+            if (!cssVerified || !(context instanceof WebDriver)) {
+                FrameworkEvents.Lookup event = FrameworkEvents.beginLookup(xpath, "xpath");
+                List<WebElement> found = fallback.findElements(context);
+                FrameworkEvents.endLookup(event, found.size());
+                return found;
+            }
+            long start = System.nanoTime();
+            FrameworkEvents.Lookup event = FrameworkEvents.beginLookup(xpath, "css");
+            List<WebElement> found = css.findElements(context);
+            FrameworkEvents.endLookup(event, found.size());
+            recordLookup(xpath, true, start);
+            // An empty result is always checked: a wrong translation that matches nothing would
+            // otherwise only show up as a wait that times out
+            if (found.isEmpty() || comparisons.getAndIncrement() < comparisonSamples) {
+                start = System.nanoTime();
+                List<WebElement> viaXpath = fallback.findElements(context);
+                recordLookup(xpath, false, start);
+                if (!viaXpath.equals(found)) {
+                    logger.warn("CSS {} found {} elements but XPath {} found {}, using XPath from now on",
+                            css, found.size(), xpath, viaXpath.size());
+                    cssVerified = false;
+                    return viaXpath;
+                }
+            }
+            return found;
+        }
+
+        String describeCss() {
+            return cssVerified ? css.toString() : css + " (mismatch, using xpath)";
+        }
+
+        @Override
+        public String toString() {
+            return fallback.toString();
+        }
+    }
+}
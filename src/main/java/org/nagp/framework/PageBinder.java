@@ -0,0 +1,20 @@
+package org.nagp.framework;
+
+import org.openqa.selenium.SearchContext;
+
+/**
+ * Assigns the @FindBy fields of a page object without reflection.
+ * Implementations named {@code <Page>Bindings} are generated at compile time by
+ * {@link org.nagp.codegen.PageBindingProcessor}.
+ *
+ * @param <T> page object type
+ */
+public interface PageBinder<T> {
+
+    /** Point every @FindBy field of the page at its element.
+     *
+     * @param page page object to fill in
+     * @param searchContext driver the elements are looked up with
+     */
+    void bind(T page, SearchContext searchContext);
+}
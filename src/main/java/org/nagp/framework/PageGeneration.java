@@ -0,0 +1,171 @@
+package org.nagp.framework;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.events.EventFiringDecorator;
+import org.openqa.selenium.support.events.WebDriverListener;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts page generations of a browser session so that cached element handles know when to
+ * look their element up again.
+ *
+ * <p>The generation moves on with every navigation and window or frame switch, seen through an
+ * EventFiringDecorator around the driver. After a click, submit, key press or script call the next
+ * cached lookup first asks the page whether the document was replaced or a major DOM mutation
+ * (at least {@code majorDomMutationNodes} elements removed at once) happened since the last check;
+ * both also start a new generation.</p>
+ */
+public class PageGeneration implements WebDriverListener {
+    private static final Logger logger = LogManager.getLogger(PageGeneration.class);
+    private static final Map<WebDriver, PageGeneration> generations =
+            Collections.synchronizedMap(new WeakHashMap<WebDriver, PageGeneration>());
+
+    /**
+     * Returns the number of major DOM mutations seen in the current document, or -1 if the counter
+     * was not installed yet, i.e. the document is new. arguments[0] is the removed element threshold.
+     */
+    private static final String DOM_GENERATION_SCRIPT =
+            "var threshold = arguments[0];"
+            + "if (window.__nagpDomGeneration !== undefined) { return window.__nagpDomGeneration; }"
+            + "window.__nagpDomGeneration = 0;"
+            + "new MutationObserver(function (mutations) {"
+            + "  var removed = 0;"
+            + "  for (var i = 0; i < mutations.length; i++) {"
+            + "    var nodes = mutations[i].removedNodes;"
+            + "    for (var j = 0; j < nodes.length; j++) {"
+            + "      if (nodes[j].nodeType === 1) { removed += 1 + nodes[j].getElementsByTagName('*').length; }"
+            + "    }"
+            + "  }"
+            + "  if (removed >= threshold) { window.__nagpDomGeneration++; }"
+            + "}).observe(document.documentElement, {childList: true, subtree: true});"
+            + "return -1;";
+
+    private final AtomicLong generation = new AtomicLong();
+    private final int majorMutationNodes;
+    private volatile boolean domCheckPending = true;
+    private long lastDomGeneration = -1;
+
+    private PageGeneration(int majorMutationNodes) {
+        this.majorMutationNodes = majorMutationNodes;
+    }
+
+    /** Wrap a driver so that its page generations are tracked.
+     *
+     * @param driver freshly created driver
+     * @param majorMutationNodes number of elements a single mutation must remove to count as a new page
+     * @param otherListeners further listeners to attach to the same decorator
+     * @return decorated driver to hand out to page objects and tests
+     */
+    public static WebDriver track(WebDriver driver, int majorMutationNodes, WebDriverListener... otherListeners) {
+        PageGeneration pageGeneration = new PageGeneration(majorMutationNodes);
+        WebDriverListener[] listeners = new WebDriverListener[otherListeners.length + 1];
+        listeners[0] = pageGeneration;
+        System.arraycopy(otherListeners, 0, listeners, 1, otherListeners.length);
+        WebDriver decorated = new EventFiringDecorator<WebDriver>(listeners).decorate(driver);
+        generations.put(driver, pageGeneration);
+        generations.put(decorated, pageGeneration);
+        return decorated;
+    }
+
+    /** @return the tracker of the given driver, or null if it is not tracked */
+    public static PageGeneration of(SearchContext searchContext) {
+        return searchContext instanceof WebDriver ? generations.get(searchContext) : null;
+    }
+
+    /** Current generation; checks the page for a new document or major mutation after interactions.
+     *
+     * @param searchContext tracked driver, used to run the check script
+     * @return generation number, changes whenever cached handles must be dropped
+     */
+    public synchronized long current(SearchContext searchContext) {
+        if (domCheckPending && searchContext instanceof JavascriptExecutor) {
+            domCheckPending = false;
+            try {
+                Object domGeneration = ((JavascriptExecutor) searchContext)
+                        .executeScript(DOM_GENERATION_SCRIPT, majorMutationNodes);
+                long observed = domGeneration instanceof Number ? ((Number) domGeneration).longValue() : -1;
+                if (observed < 0 || observed != lastDomGeneration) {
+                    generation.incrementAndGet();
+                    logger.debug("New page generation {} after DOM change", generation.get());
+                }
+                lastDomGeneration = Math.max(observed, 0);
+            } catch (RuntimeException e) {
+                logger.debug("Unable to check the DOM generation, dropping cached elements", e);
+                generation.incrementAndGet();
+            }
+        }
+        return generation.get();
+    }
+
+    private void nextGeneration() {
+        generation.incrementAndGet();
+        domCheckPending = true;
+    }
+
+    @Override
+    public void afterGet(WebDriver driver, String url) {
+        nextGeneration();
+    }
+
+    @Override
+    public void afterAnyNavigationCall(WebDriver.Navigation navigation, Method method, Object[] args, Object result) {
+        nextGeneration();
+    }
+
+    @Override
+    public void afterWindow(WebDriver.TargetLocator targetLocator, String nameOrHandle, WebDriver driver) {
+        nextGeneration();
+    }
+
+    @Override
+    public void afterFrame(WebDriver.TargetLocator targetLocator, int index, WebDriver driver) {
+        nextGeneration();
+    }
+
+    @Override
+    public void afterFrame(WebDriver.TargetLocator targetLocator, String nameOrId, WebDriver driver) {
+        nextGeneration();
+    }
+
+    @Override
+    public void afterFrame(WebDriver.TargetLocator targetLocator, WebElement frameElement, WebDriver driver) {
+        nextGeneration();
+    }
+
+    @Override
+    public void afterDefaultContent(WebDriver.TargetLocator targetLocator, WebDriver driver) {
+        nextGeneration();
+    }
+
+    @Override
+    public void afterClick(WebElement element) {
+        domCheckPending = true;
+    }
+
+    @Override
+    public void afterSubmit(WebElement element) {
+        domCheckPending = true;
+    }
+
+    @Override
+    public void afterSendKeys(WebElement element, CharSequence... keysToSend) {
+        domCheckPending = true;
+    }
+
+    @Override
+    public void afterExecuteScript(WebDriver driver, String script, Object[] args, Object result) {
+        if (!DOM_GENERATION_SCRIPT.equals(script)) {
+            domCheckPending = true;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.nagp.framework;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.metrics.TraceTimeline;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chromium.HasCdp;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Puts a browser session back into a clean state between tests without restarting it and with at
+ * most one page load.
+ *
+ * <p>Extra windows are closed. If the session is still on the target page exactly as it was right
+ * after the last reset loaded it, nothing else happens and no page is loaded. Otherwise cookies and
+ * the local storage, IndexedDB, cache storage and service workers of the current and the target
+ * origin are cleared through DevTools on Chromium browsers (cookies only on others), session and
+ * local storage of the open page are cleared with a script, and the target is loaded, or reloaded
+ * if the session is already on it, so the next test gets a new document.</p>
+ *
+ * <p>"As it was" compares a fingerprint of the document, form values, storage and script visible
+ * cookies; HttpOnly cookies and IndexedDB written without touching the page are not seen.</p>
+ */
+public final class SessionReset {
+    private static final Logger logger = LogManager.getLogger(SessionReset.class);
+    private static final String STORAGE_TYPES = "local_storage,indexeddb,websql,cache_storage,service_workers";
+    private static final String CLEAR_PAGE_STORAGE_SCRIPT =
+            "try { window.sessionStorage.clear(); window.localStorage.clear(); } catch (e) {}";
+    /** Leaves a hash of the document, its form values, storage and cookies in {@code fingerprint}. */
+    private static final String FINGERPRINT =
+            "var s = document.documentElement.outerHTML + '|' + document.cookie;"
+            + "var fields = document.querySelectorAll('input,textarea,select');"
+            + "for (var i = 0; i < fields.length; i++) { s += '|' + fields[i].value + fields[i].checked; }"
+            + "try { [window.localStorage, window.sessionStorage].forEach(function(storage) {"
+            + "  for (var j = 0; j < storage.length; j++) { s += '|' + storage.key(j) + '=' + storage.getItem(storage.key(j)); }"
+            + "}); } catch (e) {}"
+            + "var hash = 0; for (var k = 0; k < s.length; k++) { hash = (hash * 31 + s.charCodeAt(k)) | 0; }"
+            + "var fingerprint = location.href + ' ' + s.length + ':' + hash;";
+    private static final String MARK_FRESH_SCRIPT = FINGERPRINT + "window.__nagpFreshState = fingerprint;";
+    private static final String IS_FRESH_SCRIPT = FINGERPRINT + "return window.__nagpFreshState === fingerprint;";
+
+    private SessionReset() {
+    }
+
+    /** Reset a session and leave it on the target URL.
+     *
+     * @param driver driver the tests use, so that listeners see the window switch and navigation
+     * @param sessionDriver undecorated driver of the same session, used for DevTools commands
+     * @param targetUrl page the next test starts from
+     * @return true if the reset cleared the session and loaded or reloaded the target page
+     */
+    public static boolean reset(WebDriver driver, WebDriver sessionDriver, String targetUrl) {
+        try (TraceTimeline.Span ignored = TraceTimeline.span("session", "reset", targetUrl)) {
+            closeExtraWindows(driver);
+            String currentUrl = driver.getCurrentUrl();
+            boolean sameDocument = sameDocument(currentUrl, targetUrl);
+            if (sameDocument && isFresh(driver)) {
+                logger.debug("Session still on a fresh {}, no cleanup needed", targetUrl);
+                return false;
+            }
+            clearBrowserState(driver, sessionDriver, currentUrl, targetUrl);
+            if (sameDocument) {
+                driver.navigate().refresh();
+            } else {
+                driver.get(targetUrl);
+            }
+            markFresh(driver);
+            return true;
+        }
+    }
+
+    /** @return true if the open page is still exactly as {@link #markFresh} left it */
+    static boolean isFresh(WebDriver driver) {
+        try {
+            return driver instanceof JavascriptExecutor
+                    && Boolean.TRUE.equals(((JavascriptExecutor) driver).executeScript(IS_FRESH_SCRIPT));
+        } catch (WebDriverException e) {
+            logger.debug("Unable to check the page state", e);
+            return false;
+        }
+    }
+
+    /** Remember the state of the freshly loaded page for {@link #isFresh}. */
+    static void markFresh(WebDriver driver) {
+        if (driver instanceof JavascriptExecutor) {
+            try {
+                ((JavascriptExecutor) driver).executeScript(MARK_FRESH_SCRIPT);
+            } catch (WebDriverException e) {
+                logger.debug("Unable to mark the page state", e);
+            }
+        }
+    }
+
+    static void closeExtraWindows(WebDriver driver) {
+        Set<String> handles = new LinkedHashSet<>(driver.getWindowHandles());
+        if (handles.size() <= 1) {
+            return;
+        }
+        List<String> ordered = new ArrayList<>(handles);
+        String main = ordered.get(0);
+        for (String handle : ordered.subList(1, ordered.size())) {
+            driver.switchTo().window(handle);
+            driver.close();
+        }
+        driver.switchTo().window(main);
+        logger.debug("Closed {} extra windows", handles.size() - 1);
+    }
+
+    /** Clear cookies of all sites and the storage of the current and the target origin. */
+    static void clearBrowserState(WebDriver driver, WebDriver sessionDriver, String currentUrl, String targetUrl) {
+        if (driver instanceof JavascriptExecutor) {
+            try {
+                ((JavascriptExecutor) driver).executeScript(CLEAR_PAGE_STORAGE_SCRIPT);
+            } catch (WebDriverException e) {
+                logger.debug("Unable to clear the page storage", e);
+            }
+        }
+        if (!(sessionDriver instanceof HasCdp)) {
+            driver.manage().deleteAllCookies();
+            return;
+        }
+        HasCdp cdp = (HasCdp) sessionDriver;
+        cdp.executeCdpCommand("Network.clearBrowserCookies", Collections.<String, Object>emptyMap());
+        Set<String> origins = new LinkedHashSet<>();
+        origins.add(origin(currentUrl));
+        origins.add(origin(targetUrl));
+        origins.remove(null);
+        for (String origin : origins) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("origin", origin);
+            params.put("storageTypes", STORAGE_TYPES);
+            try {
+                cdp.executeCdpCommand("Storage.clearDataForOrigin", params);
+            } catch (WebDriverException e) {
+                logger.debug("Unable to clear the storage of {}", origin, e);
+            }
+        }
+    }
+
+    /** @return scheme://host[:port] of an http(s) URL, or null for other URLs such as data: or about:blank */
+    static String origin(String url) {
+        try {
+            URI uri = URI.create(url);
+            if (uri.getHost() == null || !uri.getScheme().startsWith("http")) {
+                return null;
+            }
+            return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() < 0 ? "" : ":" + uri.getPort());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static boolean sameDocument(String currentUrl, String targetUrl) {
+        return normalize(currentUrl).equals(normalize(targetUrl));
+    }
+
+    private static String normalize(String url) {
+        String withoutFragment = url.contains("#") ? url.substring(0, url.indexOf('#')) : url;
+        return withoutFragment.endsWith("/")
+                ? withoutFragment.substring(0, withoutFragment.length() - 1) : withoutFragment;
+    }
+}
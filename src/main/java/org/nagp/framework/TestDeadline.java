@@ -0,0 +1,159 @@
+package org.nagp.framework;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-test time budget carried as a deadline on the test thread.
+ *
+ * <p>The test listener starts a deadline for every test when {@code testTimeBudget} is set. Waits
+ * in WaitTool and WebElements go through {@link DeadlineWait}, which limits each wait to what is
+ * left of the budget via {@link #clamp(Duration, String)} and reports the time it used with
+ * {@link #charge(String, long)}; retry loops call {@link #check(String)} before every attempt.
+ * Once the budget is gone the test fails with a {@link TimeBudgetExceededError} that lists where
+ * the time went.</p>
+ *
+ * <p>All static methods are no-ops when no deadline is active on the current thread.</p>
+ */
+public class TestDeadline {
+    private static final Logger logger = LogManager.getLogger(TestDeadline.class);
+    private static final ThreadLocal<TestDeadline> current = new ThreadLocal<>();
+
+    private final String testName;
+    private final long budgetMillis;
+    private final long startNanos;
+    private final long deadlineNanos;
+    private final Map<String, long[]> spentByStep = new LinkedHashMap<>();
+
+    private TestDeadline(String testName, long budgetMillis) {
+        this.testName = testName;
+        this.budgetMillis = budgetMillis;
+        this.startNanos = System.nanoTime();
+        this.deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    /** Start a deadline for the test running on the current thread.
+     *
+     * @param testName name used in the failure message
+     * @param budgetSeconds time budget of the test; 0 or less disables the deadline
+     */
+    public static void start(String testName, long budgetSeconds) {
+        if (budgetSeconds > 0) {
+            current.set(new TestDeadline(testName, TimeUnit.SECONDS.toMillis(budgetSeconds)));
+        } else {
+            current.remove();
+        }
+    }
+
+    /** @return deadline of the current thread, or null if none is active */
+    public static TestDeadline current() {
+        return current.get();
+    }
+
+    /** Remove the deadline of the current thread; called when the test ends. */
+    public static void clear() {
+        current.remove();
+    }
+
+    /** Limit a timeout to what is left of the budget.
+     *
+     * @param requestedSeconds timeout the caller wants
+     * @param step description of the wait, e.g. method and locator
+     * @return the smaller of the requested timeout and the remaining budget, rounded up
+     * @throws TimeBudgetExceededError if the budget is already used up
+     */
+    public static int clamp(int requestedSeconds, String step) {
+        TestDeadline deadline = current.get();
+        if (deadline == null) {
+            return requestedSeconds;
+        }
+        long remainingMillis = deadline.remainingMillis(step);
+        return (int) Math.min(requestedSeconds, (remainingMillis + 1000) / 1000);
+    }
+
+    /** Duration variant of {@link #clamp(int, String)}. */
+    public static Duration clamp(Duration requested, String step) {
+        TestDeadline deadline = current.get();
+        if (deadline == null) {
+            return requested;
+        }
+        long remainingMillis = deadline.remainingMillis(step);
+        // Round up so that a wait cut short really ends past the deadline.
+        return requested.toMillis() <= remainingMillis ? requested : Duration.ofMillis(remainingMillis + 1);
+    }
+
+    /** Fail fast if the budget is used up, e.g. before another retry attempt.
+     *
+     * @param step description of what was about to run
+     * @throws TimeBudgetExceededError if the budget is already used up
+     */
+    public static void check(String step) {
+        TestDeadline deadline = current.get();
+        if (deadline != null) {
+            deadline.remainingMillis(step);
+        }
+    }
+
+    /** Book the time since startNanos against a step for the breakdown.
+     *
+     * @param step description of the wait
+     * @param startNanos System.nanoTime() when the step started
+     */
+    public static void charge(String step, long startNanos) {
+        TestDeadline deadline = current.get();
+        if (deadline != null) {
+            long[] spent = deadline.spentByStep.get(step);
+            if (spent == null) {
+                spent = new long[2];
+                deadline.spentByStep.put(step, spent);
+            }
+            spent[0] += System.nanoTime() - startNanos;
+            spent[1]++;
+        }
+    }
+
+    /** Error to throw when a step ran into the deadline; used by waits that were cut short. */
+    static TimeBudgetExceededError exceeded(String step) {
+        TestDeadline deadline = current.get();
+        return deadline == null ? new TimeBudgetExceededError("Time budget exceeded at " + step)
+                : deadline.exceededAt(step);
+    }
+
+    private long remainingMillis(String step) {
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        if (remainingNanos <= 0) {
+            throw exceededAt(step);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos);
+    }
+
+    private TimeBudgetExceededError exceededAt(String step) {
+        String message = String.format("Test %s exceeded its time budget of %ds at %s. %s", testName,
+                TimeUnit.MILLISECONDS.toSeconds(budgetMillis), step, breakdown());
+        logger.error(message);
+        return new TimeBudgetExceededError(message);
+    }
+
+    /** @return where the budget went so far, largest step first */
+    public String breakdown() {
+        List<Map.Entry<String, long[]>> steps = new ArrayList<>(spentByStep.entrySet());
+        steps.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long waitedNanos = 0;
+        StringBuilder builder = new StringBuilder("Time spent:");
+        for (Map.Entry<String, long[]> step : steps) {
+            waitedNanos += step.getValue()[0];
+            builder.append(String.format("%n  %6.1fs  %dx %s", step.getValue()[0] / 1e9, step.getValue()[1],
+                    step.getKey()));
+        }
+        builder.append(String.format("%n  %6.1fs  outside waits", Math.max(0, elapsedNanos - waitedNanos) / 1e9));
+        return builder.toString();
+    }
+}
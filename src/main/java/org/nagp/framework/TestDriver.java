@@ -4,6 +4,16 @@ package org.nagp.framework;
 import io.github.bonigarcia.wdm.WebDriverManager;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.nagp.metrics.CommandTimings;
+import org.nagp.metrics.FrameworkEvents;
+import org.nagp.metrics.SuiteMetrics;
+import org.nagp.metrics.TraceTimeline;
+import org.nagp.navigation.Navigator;
+import org.nagp.navigation.StartsOn;
+import org.nagp.network.BackendMocks;
+import org.nagp.network.CachingProxy;
+import org.nagp.network.NetworkMode;
+import org.nagp.network.RecordReplay;
 import org.openqa.selenium.Dimension;
 import org.openqa.selenium.Platform;
 import org.openqa.selenium.WebDriver;
@@ -18,7 +28,10 @@ import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.safari.SafariOptions;
+import org.openqa.selenium.support.events.EventFiringDecorator;
+import org.openqa.selenium.support.events.WebDriverListener;
 
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -31,10 +44,14 @@ public class TestDriver {
     private static final String BROWSER = "browser";
 
     private WebDriver webDriver = null;
+    /** The session's driver before listeners were added, for DevTools commands. */
+    private WebDriver sessionDriver = null;
     private Helper helper = new Helper();
     private Properties configProps = helper.readConfig();
+    private BackendMocks backendMocks;
 
     protected static ThreadLocal<RemoteWebDriver> driverTH = new ThreadLocal<>();
+    private static final ThreadLocal<Long> sessionLaunchMillis = new ThreadLocal<>();
 
     enum Browser {
         FIREFOX, CHROME, SAFARI, EDGE
@@ -54,13 +71,162 @@ public class TestDriver {
         System.setProperty("webdriver.chrome.whitelistedIps","");
         System.setProperty("jenkins.model.DirectoryBrowserSupport.CSP", "sandbox allow-same-origin allow-scripts; default-src 'self' 'unsafe-inline' 'unsafe-eval'; img-src 'self' data:; font-src 'self' data:");
         System.setProperty("hudson.model.DirectoryBrowserSupport.CSP", "sandbox allow-same-origin allow-scripts; default-src 'self' 'unsafe-inline' 'unsafe-eval'; img-src 'self' data:; font-src 'self' data:");
+        long start = System.currentTimeMillis();
+        FrameworkEvents.SessionLaunch launchEvent = FrameworkEvents.beginSessionLaunch(
+                configProps == null ? null : configProps.getProperty(BROWSER));
         try {
             setupWebDriver();
         } catch (Exception e) {
             logger.error("Driver initialization failed.", e);
+        } finally {
+            FrameworkEvents.endSessionLaunch(launchEvent, webDriver != null);
+        }
+        if (webDriver != null) {
+            SuiteMetrics.getInstance().sessionOpened();
+            sessionLaunchMillis.set(System.currentTimeMillis() - start);
+            logger.info("Browser session launched in {} ms", sessionLaunchMillis.get());
+            NetworkMode networkMode = NetworkMode.fromConfig(configProps);
+            if (Boolean.parseBoolean(configProps.getProperty("mockBackend", "false").trim())) {
+                backendMocks = new BackendMocks();
+            } else if (networkMode == NetworkMode.RECORD) {
+                backendMocks = new BackendMocks(true);
+            }
+            RecordReplay.install(webDriver, networkMode, backendMocks);
+            sessionDriver = webDriver;
+            List<WebDriverListener> listeners = new ArrayList<>();
+            if (Boolean.parseBoolean(configProps.getProperty("commandTimings", "false").trim())) {
+                listeners.add(CommandTimings.getInstance());
+            }
+            if (TraceTimeline.isEnabled()) {
+                listeners.add(TraceTimeline.driverListener());
+            }
+            if (Boolean.parseBoolean(configProps.getProperty("cacheElementHandles", "false").trim())) {
+                // Page objects cache element handles until this tracker reports a new page generation.
+                webDriver = PageGeneration.track(webDriver,
+                        Integer.parseInt(configProps.getProperty("majorDomMutationNodes", "25").trim()),
+                        listeners.toArray(new WebDriverListener[0]));
+            } else if (!listeners.isEmpty()) {
+                webDriver = new EventFiringDecorator<WebDriver>(listeners.toArray(new WebDriverListener[0]))
+                        .decorate(webDriver);
+            }
+        }
+    }
+
+    /** Clean the session between tests (windows, cookies, storage) and leave it on the given page,
+     * loading it only if the session is elsewhere. See {@link SessionReset}.
+     *
+     * @param url page the next test starts from
+     */
+    public void resetSession(String url) {
+        if (webDriver == null) {
+            logger.warn("No browser session to reset.");
+            return;
+        }
+        SessionReset.reset(webDriver, sessionDriver, url);
+    }
+
+    /** Take this session to a page along the cheapest route, preferring deep links over UI clicks.
+     * See {@link Navigator}.
+     *
+     * @param page page object class to reach
+     * @param <T> page object type
+     * @return the page object of the reached page
+     */
+    public <T> T navigateTo(Class<T> page) {
+        return Navigator.forPackageOf(page).navigateTo(webDriver, configProps.getProperty("webHost"), page);
+    }
+
+    /** Put the session on the start of the test about to run: the page of its {@link StartsOn}, or
+     * webHost. With a state key, the first test reaches the page and captures the snapshot for the
+     * rest of the suite, and later tests restore it instead (see {@link #startFrom}).
+     *
+     * @param testMethod test method about to run on this session
+     */
+    public void startOn(Method testMethod) {
+        if (webDriver == null) {
+            logger.warn("No browser session to start the test on.");
+            return;
+        }
+        StartsOn start = Navigator.startOf(testMethod);
+        if (start == null) {
+            resetSession(configProps.getProperty("webHost"));
+        } else if (start.state().isEmpty()) {
+            resetOnto(start.value());
+        } else {
+            startFrom(start.state(), () -> resetOnto(start.value()));
         }
     }
 
+    /** Reset the session onto a page: its deep link, or webHost and the cheapest route from there. */
+    private void resetOnto(Class<?> page) {
+        String webHost = configProps.getProperty("webHost");
+        String url = Navigator.forPackageOf(page).urlOf(webHost, page);
+        resetSession(url != null ? url : webHost);
+        if (url == null) {
+            navigateTo(page);
+        }
+    }
+
+    /** Capture cookies, storage and URL of this session under a key for the rest of the suite.
+     *
+     * @param key name of the state, e.g. "trainsTab"
+     */
+    public void snapshotState(String key) {
+        BrowserStateSnapshot.put(key, BrowserStateSnapshot.capture(webDriver, sessionDriver));
+    }
+
+    /** Replace the state of this session with a snapshot taken earlier in the suite.
+     *
+     * @param key name the state was captured under
+     * @return false if there is no such snapshot
+     */
+    public boolean restoreState(String key) {
+        BrowserStateSnapshot snapshot = BrowserStateSnapshot.get(key);
+        if (snapshot == null) {
+            return false;
+        }
+        snapshot.restore(webDriver, sessionDriver);
+        return true;
+    }
+
+    /** Start a test from a known state: restore the snapshot of the key, or run the setup flow once
+     * and capture its result for the following tests.
+     * <pre>
+     *   testDriver.startFrom("trainsTab", () -&gt; new Homepage(driver).clickTrainPage(driver));
+     * </pre>
+     *
+     * @param key name of the state
+     * @param setupFlow steps that lead to the state from the current page
+     */
+    public void startFrom(String key, Runnable setupFlow) {
+        if (!restoreState(key)) {
+            setupFlow.run();
+            snapshotState(key);
+        }
+    }
+
+    /** Answer the backend calls of the test about to run from its {@link org.nagp.network.UseMocks}
+     * fixture, or let them reach the real endpoints if it has none or {@code mockBackend} is off.
+     *
+     * @param testMethod test method about to run on this session
+     */
+    public void useMocks(Method testMethod) {
+        if (backendMocks != null) {
+            backendMocks.use(BackendMocks.fixtureOf(testMethod));
+        }
+    }
+
+    /** Returns the launch time of the session last started on this thread and clears it,
+     * so that only the first test on a new session reports it.
+     *
+     * @return launch time in milliseconds, or 0 if no new session was started
+     */
+    public static long takeSessionLaunchMillis() {
+        Long launchMillis = sessionLaunchMillis.get();
+        sessionLaunchMillis.remove();
+        return launchMillis == null ? 0 : launchMillis;
+    }
+
     synchronized private void setupWebDriver(){
         if (webDriver == null) {
             logger.debug("The webDriver object is null, so getting Driver Object from Driver Class.");
@@ -138,6 +304,10 @@ public class TestDriver {
                     options.addArguments("--disable-site-isolation-for-policy");
                     options.addArguments("--enable-javascript");
                     options.addArguments("--disable-dev-shm-usage");;
+                    CachingProxy proxy = CachingProxy.getInstance();
+                    if (proxy != null) {
+                        options.addArguments("--proxy-server=" + proxy.getAddress());
+                    }
                     WebDriverManager.chromedriver().setup();
                     if (Boolean.parseBoolean(configProps.getProperty("browserHeadless"))) {
                         logger.info("############## -- Browser chrome requested as headless mode.----- ###########################");
@@ -207,6 +377,7 @@ public class TestDriver {
         if (driver != null) {
             logger.debug("Quitting WebDriver instance");
             driver.quit();
+            SuiteMetrics.getInstance().sessionClosed();
         }
     }
 
@@ -0,0 +1,12 @@
+package org.nagp.framework;
+
+/** Thrown when a test has used up its time budget.
+ * It is an AssertionError so that it fails the test and passes through the many
+ * {@code catch (Exception e)} blocks in the wait and retry helpers instead of being swallowed.
+ */
+public class TimeBudgetExceededError extends AssertionError {
+
+    public TimeBudgetExceededError(String message) {
+        super(message);
+    }
+}
@@ -3,9 +3,15 @@ package org.nagp.framework;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nagp.dataProvider.Constants;
+import org.nagp.history.LocatorTimings;
+import org.nagp.metrics.FrameworkEvents;
 import org.nagp.utils.WaitTool;
 import org.openqa.selenium.*;
 import org.openqa.selenium.interactions.Actions;
+import org.openqa.selenium.support.FindAll;
+import org.openqa.selenium.support.FindBy;
+import org.openqa.selenium.support.FindBys;
+import org.openqa.selenium.support.PageFactory;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
 import org.testng.Assert;
@@ -13,16 +19,68 @@ import org.testng.Assert;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 public class WebElements extends Driver {
   private static final Logger logger = LogManager.getLogger(WebElements.class);
+  private static final Map<Class<?>, Optional<List<PageBinder<Object>>>> BINDERS = new ConcurrentHashMap<>();
 
   public WebElements(String... params) {
     super(params);
   }
 
+  /** Initialise the @FindBy fields of a page object.
+   * Pages bound by a generated {@code <Page>Bindings} class (see PageBindingProcessor) are initialised
+   * without reflection; any other page falls back to PageFactory.
+   * XPath locators are compiled to CSS where possible and resolved elements are cached
+   * until the page changes; stale elements are looked up again once.
+   * @param driver driver the page object works on
+   */
+  protected void initElements(WebDriver driver) {
+    Optional<List<PageBinder<Object>>> binders = BINDERS.computeIfAbsent(getClass(), WebElements::findBinders);
+    if (!binders.isPresent()) {
+      PageFactory.initElements(new CachingFieldDecorator(new CompiledLocatorFactory(driver)), this);
+      return;
+    }
+    for (PageBinder<Object> binder : binders.get()) {
+      binder.bind(this, driver);
+    }
+  }
+
+  /** Generated binders for a page class and its superclasses, empty if a class with locator fields has none. */
+  @SuppressWarnings("unchecked")
+  private static Optional<List<PageBinder<Object>>> findBinders(Class<?> pageClass) {
+    List<PageBinder<Object>> binders = new ArrayList<>();
+    for (Class<?> type = pageClass; type != WebElements.class && type != null; type = type.getSuperclass()) {
+      try {
+        Class<?> bindings = Class.forName(type.getName() + "Bindings", true, type.getClassLoader());
+        binders.add((PageBinder<Object>) bindings.getDeclaredConstructor().newInstance());
+      } catch (ClassNotFoundException e) {
+        if (hasLocatorFields(type)) {
+          logger.info("No generated bindings for " + type.getName() + ", using PageFactory");
+          return Optional.empty();
+        }
+      } catch (ReflectiveOperationException | ClassCastException e) {
+        logger.error("Unable to load generated bindings for " + type.getName() + ", using PageFactory", e);
+        return Optional.empty();
+      }
+    }
+    return Optional.of(binders);
+  }
+
+  private static boolean hasLocatorFields(Class<?> type) {
+    for (java.lang.reflect.Field field : type.getDeclaredFields()) {
+      if (field.isAnnotationPresent(FindBy.class) || field.isAnnotationPresent(FindBys.class)
+          || field.isAnnotationPresent(FindAll.class)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /** Get the WebElement matching the given xpath using the configured minimum timeout.
    *
    * @param xpath Xpath to use to find the element.
@@ -67,7 +125,7 @@ public class WebElements extends Driver {
     WebElement element=null;
     try {
       element = WaitTool
-              .waitForElementPresent(getWebDriverInstance(), By.xpath(xpath), timeout);
+              .waitForElementPresent(getWebDriverInstance(), LocatorCompiler.compile(xpath), timeout);
       if (element == null) {
         throw new NoSuchElementException(xpath);
       }
@@ -97,7 +155,7 @@ public class WebElements extends Driver {
     WebElement element = null;
     try {
       element = WaitTool
-              .waitForElementPresent(driverParallel, By.xpath(xpath), timeout);
+              .waitForElementPresent(driverParallel, LocatorCompiler.compile(xpath), timeout);
       if (element == null) {
         throw new NoSuchElementException(xpath);
       }
@@ -167,10 +225,12 @@ public class WebElements extends Driver {
     int attempts = 0;
     int maxTries = Integer.parseInt(configProps.getProperty("maxRetries"));
     while(attempts< maxTries) {
+      TestDeadline.check("retryFindElement attempt " + attempts + " " + xpath);
+      FrameworkEvents.retry("retryFindElement " + xpath, attempts);
       try {
         logger.info("number of attempts done to search element {}",attempts);
         element = WaitTool
-                .waitForElementPresent(getWebDriverInstance(), By.xpath(xpath), Integer.parseInt(configProps.getProperty("minTimeout")));
+                .waitForElementPresent(getWebDriverInstance(), LocatorCompiler.compile(xpath), Integer.parseInt(configProps.getProperty("minTimeout")));
         if (element == null) {
           throw new NoSuchElementException(xpath);
         }
@@ -201,10 +261,12 @@ public class WebElements extends Driver {
     int attempts = 0;
     int maxTries = Integer.parseInt(configProps.getProperty("maxRetries"));
     while(attempts< maxTries) {
+      TestDeadline.check("retryFindElement attempt " + attempts + " " + xpath);
+      FrameworkEvents.retry("retryFindElement " + xpath, attempts);
       try {
         logger.info("number of attempts done to search element {}",attempts);
         element = WaitTool
-                .waitForElementPresent(driverParallel, By.xpath(xpath), Integer.parseInt(configProps.getProperty("avgTimeout")));
+                .waitForElementPresent(driverParallel, LocatorCompiler.compile(xpath), Integer.parseInt(configProps.getProperty("avgTimeout")));
         if(element != null) {
           return element;
         }
@@ -244,10 +306,12 @@ public class WebElements extends Driver {
     int attempts = 0;
     int maxTries = Integer.parseInt(configProps.getProperty("maxRetries"));
     while(attempts< maxTries) {
+      TestDeadline.check("retryElementEnabled attempt " + attempts + " " + xpath);
+      FrameworkEvents.retry("retryElementEnabled " + xpath, attempts);
       try {
         logger.info("number of attempts done to search element {}",attempts);
         element = WaitTool
-                .waitForElementClickable(driverParallel, By.xpath(xpath), Integer.parseInt(configProps.getProperty("avgTimeout")));
+                .waitForElementClickable(driverParallel, LocatorCompiler.compile(xpath), Integer.parseInt(configProps.getProperty("avgTimeout")));
 
         if(element!=null ) {
           return element;
@@ -317,7 +381,7 @@ public class WebElements extends Driver {
     List<WebElement> list = null;
     try{
       list = WaitTool
-              .waitForListElementsPresent(getWebDriverInstance(), By.xpath(xpath), timeout);
+              .waitForListElementsPresent(getWebDriverInstance(), LocatorCompiler.compile(xpath), timeout);
       if (list == null) {
         throw new NoSuchElementException(xpath);
       }
@@ -347,7 +411,7 @@ public class WebElements extends Driver {
     List<WebElement> list = null;
     try{
       list = WaitTool
-              .waitForListElementsPresent(driverParallel, By.xpath(xpath), timeout);
+              .waitForListElementsPresent(driverParallel, LocatorCompiler.compile(xpath), timeout);
       if (list == null) {
         throw new NoSuchElementException(xpath);
       }
@@ -369,10 +433,12 @@ public class WebElements extends Driver {
     int attempts = 0;
     int maxTries = Integer.parseInt(configProps.getProperty("maxRetries"));
     while(attempts< maxTries) {
+      TestDeadline.check("retryFindElements attempt " + attempts + " " + xpath);
+      FrameworkEvents.retry("retryFindElements " + xpath, attempts);
       try {
         logger.info("number of attempts done to search  list element {}",attempts);
         list = WaitTool
-                .waitForListElementsPresent(getWebDriverInstance(), By.xpath(xpath), Integer.parseInt(configProps.getProperty("minTimeout")));
+                .waitForListElementsPresent(getWebDriverInstance(), LocatorCompiler.compile(xpath), Integer.parseInt(configProps.getProperty("minTimeout")));
         if (list == null) {
           throw new NoSuchElementException(xpath);
         }
@@ -399,10 +465,12 @@ public class WebElements extends Driver {
     int attempts = 0;
     int maxTries = Integer.parseInt(configProps.getProperty("maxRetries"));
     while(attempts< maxTries) {
+      TestDeadline.check("retryFindElements attempt " + attempts + " " + xpath);
+      FrameworkEvents.retry("retryFindElements " + xpath, attempts);
       try {
         logger.info("number of attempts done to search  list element {}",attempts);
         list = WaitTool
-                .waitForListElementsPresent(driverParallel, By.xpath(xpath), Integer.parseInt(configProps.getProperty("minTimeout")));
+                .waitForListElementsPresent(driverParallel, LocatorCompiler.compile(xpath), Integer.parseInt(configProps.getProperty("minTimeout")));
         if (list == null) {
           throw new NoSuchElementException(xpath);
         }
@@ -438,7 +506,7 @@ public class WebElements extends Driver {
     WebDriver driver = getWebDriverInstance();
     // nullify implicitlyWait
     driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-    WebDriverWait wait = new WebDriverWait(driver, timeout);
+    WebDriverWait wait = new DeadlineWait(driver, timeout);
     WebElement element = wait.until(x -> x.findElement(locatorTypeAndLocatorValue));
     Assert.assertTrue(element!=null && element.isEnabled());
     return element;
@@ -467,7 +535,7 @@ public class WebElements extends Driver {
       WebDriver driver = getWebDriverInstance();
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver, timeout);
+      WebDriverWait wait = new DeadlineWait(driver, timeout);
       WebElement element = wait.until(x -> x.findElement(locatorTypeAndLocatorValue));
       if (element.isEnabled()) {
         present = true;
@@ -514,7 +582,7 @@ public class WebElements extends Driver {
       WebDriver driver = getWebDriverInstance();
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver, timeout);
+      WebDriverWait wait = new DeadlineWait(driver, timeout);
       WebElement element = wait.until(x -> x.findElement(locatorTypeAndLocatorValue));
       if (element.isDisplayed()) {
         present = true;
@@ -540,7 +608,7 @@ public class WebElements extends Driver {
       WebDriver driver = driverParallel;
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver, timeout);
+      WebDriverWait wait = new DeadlineWait(driver, timeout);
       WebElement element = wait.until(x -> x.findElement(locatorTypeAndLocatorValue));
       if (element.isDisplayed()) {
         present = true;
@@ -577,7 +645,7 @@ public class WebElements extends Driver {
       WebDriver driver = getWebDriverInstance();
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver, timeout);
+      WebDriverWait wait = new DeadlineWait(driver, timeout);
       WebElement element = wait.until(x -> x.findElement(locatorTypeAndLocatorValue));
       if (element.isSelected()) {
         present = true;
@@ -611,7 +679,7 @@ public class WebElements extends Driver {
     try {
       WebDriver driver = getWebDriverInstance();
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver,timeout);
+      WebDriverWait wait = new DeadlineWait(driver,timeout);
       List<WebElement> list = wait.until(x -> x.findElements(locatorTypeAndLocatorValue));
 
       if (list == null || list.isEmpty()) {
@@ -646,7 +714,7 @@ public class WebElements extends Driver {
     try {
       WebDriver driver = getWebDriverInstance();
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver,timeout);
+      WebDriverWait wait = new DeadlineWait(driver,timeout);
       list = wait.until(x -> x.findElements(locatorTypeAndLocatorValue));
 
       if (list == null || list.isEmpty()) {
@@ -677,9 +745,9 @@ public class WebElements extends Driver {
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
 
-      WebDriverWait wait = new WebDriverWait(driver,
+      WebDriverWait wait = new DeadlineWait(driver,
           Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout"))));
-      List<WebElement> elements = wait.until(x -> x.findElements(By.xpath(xpath)));
+      List<WebElement> elements = wait.until(x -> x.findElements(LocatorCompiler.compile(xpath)));
 
       // List<WebElement> elements = driver.findElements(By.xpath(xpath));
       if (!elements.isEmpty()) {
@@ -707,23 +775,28 @@ public class WebElements extends Driver {
    */
   public static boolean isElementPresent(String xpath,WebDriver driverParallel) {
     boolean found = false;
+    long start = System.nanoTime();
     try {
       WebDriver driver = driverParallel;
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
 
-      WebDriverWait wait = new WebDriverWait(driver,
-          Duration.ofSeconds(Integer.parseInt(configProps.getProperty("maxTimeout"))));
-      List<WebElement> elements = wait.until(x -> x.findElements(By.xpath(xpath)));
+      String locator = LocatorCompiler.compile(xpath).toString();
+      WebDriverWait wait = new DeadlineWait(driver, Duration.ofSeconds(LocatorTimings.getInstance()
+          .timeoutSeconds(locator, Integer.parseInt(configProps.getProperty("maxTimeout")))));
+      List<WebElement> elements = wait.until(x -> x.findElements(LocatorCompiler.compile(xpath)));
 
       // List<WebElement> elements = driver.findElements(By.xpath(xpath));
       if (!elements.isEmpty()) {
         found = true;
+        LocatorTimings.getInstance().recordAppearance(locator,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
       }
     } catch (NoSuchElementException e) {
       logger.error("NoSuchElementException Xpath - "+xpath,e);
       return false;
     } catch (TimeoutException e) {
+      // absence may be the expected outcome of a presence check, so it is not a timing sample
       logger.error("TimeoutException Xpath - "+xpath,e);
       return false;
     }
@@ -734,6 +807,21 @@ public class WebElements extends Driver {
     return found;
   }
 
+  /**
+   * This method for parallel execution
+   * Checks that no element matches the xpath. Instead of waiting for the element until a timeout,
+   * it waits for the page to settle (DOM quiet and no requests in flight) and then checks once,
+   * so an expected absence costs milliseconds rather than the full timeout.
+   *
+   * @param xpath xpath expression of element that should not be on the UI.
+   * @return true if element is absent false otherwise
+   */
+  public static boolean isElementAbsent(String xpath, WebDriver driverParallel) {
+    return WaitTool.waitForElementAbsent(driverParallel, LocatorCompiler.compile(xpath),
+        Long.parseLong(configProps.getProperty("settleQuietMillis")),
+        Integer.parseInt(configProps.getProperty("settleTimeout")));
+  }
+
   /**
    * Checks for presence of element with specified xpath. It will search for
    * element and waits for it until specified timeout.
@@ -748,8 +836,8 @@ public class WebElements extends Driver {
       WebDriver driver = getWebDriverInstance();
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver, timeout);
-      List<WebElement> elements = wait.until(x -> x.findElements(By.xpath(xpath)));
+      WebDriverWait wait = new DeadlineWait(driver, timeout);
+      List<WebElement> elements = wait.until(x -> x.findElements(LocatorCompiler.compile(xpath)));
       if (!elements.isEmpty()) {
         present = true;
       }
@@ -777,8 +865,8 @@ public class WebElements extends Driver {
       WebDriver driver = driverParallel;
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver, timeout);
-      List<WebElement> elements = wait.until(x -> x.findElements(By.xpath(xpath)));
+      WebDriverWait wait = new DeadlineWait(driver, timeout);
+      List<WebElement> elements = wait.until(x -> x.findElements(LocatorCompiler.compile(xpath)));
       if (!elements.isEmpty()) {
         present = true;
       }
@@ -795,9 +883,9 @@ public class WebElements extends Driver {
       WebDriver driver = driverParallel;
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS);
-      WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeout));
+      WebDriverWait wait = new DeadlineWait(driver, Duration.ofSeconds(timeout));
       List<WebElement> elements = wait.until(ExpectedConditions
-              .presenceOfAllElementsLocatedBy(By.xpath(xpath)));
+              .presenceOfAllElementsLocatedBy(LocatorCompiler.compile(xpath)));
       if (!elements.isEmpty()) {
         present = true;
       }
@@ -810,16 +898,22 @@ public class WebElements extends Driver {
 
   public static boolean isElementPresent(WebElement we, int timeout, WebDriver driver) {
     boolean present = false;
+    long start = System.nanoTime();
     try {
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS);
-      WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeout));
+      String locator = WaitTool.locatorOf(we);
+      WebDriverWait wait = new DeadlineWait(driver,
+          Duration.ofSeconds(LocatorTimings.getInstance().timeoutSeconds(locator, timeout)));
       WebElement element = wait.until(ExpectedConditions
               .visibilityOf(we));
       if (element!=null) {
         present = true;
+        LocatorTimings.getInstance().recordAppearance(locator,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
       }
     } catch (Exception e) {
+      // absence may be the expected outcome of a presence check, so it is not a timing sample
       logger.debug(e.getStackTrace());
     }
     return present;
@@ -839,7 +933,7 @@ public class WebElements extends Driver {
       WebDriver driver = getWebDriverInstance();
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver, timeout);
+      WebDriverWait wait = new DeadlineWait(driver, timeout);
       List<WebElement> elements = wait.until(x -> x.findElements(By.className(className)));
       if (!elements.isEmpty()) {
         present = true;
@@ -868,7 +962,7 @@ public class WebElements extends Driver {
       WebDriver driver = driverParallel;
       // nullify implicitlyWait
       driverParallel.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver, timeout);
+      WebDriverWait wait = new DeadlineWait(driver, timeout);
       List<WebElement> elements = wait.until(x -> x.findElements(By.className(className)));
       if (!elements.isEmpty()) {
         present = true;
@@ -891,9 +985,9 @@ public class WebElements extends Driver {
     try {
       WebDriver driver = getWebDriverInstance();
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver,
+      WebDriverWait wait = new DeadlineWait(driver,
           Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout"))));
-      List<WebElement> list = wait.until(x -> x.findElements(By.xpath(xpath)));
+      List<WebElement> list = wait.until(x -> x.findElements(LocatorCompiler.compile(xpath)));
 
       if (list == null || list.isEmpty()) {
         found = false;
@@ -921,9 +1015,9 @@ public class WebElements extends Driver {
     try {
       WebDriver driver = driverParallel;
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver,
+      WebDriverWait wait = new DeadlineWait(driver,
           Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout"))));
-      List<WebElement> list = wait.until(x -> x.findElements(By.xpath(xpath)));
+      List<WebElement> list = wait.until(x -> x.findElements(LocatorCompiler.compile(xpath)));
 
       if (list == null || list.isEmpty()) {
         found = false;
@@ -941,11 +1035,39 @@ public class WebElements extends Driver {
     return found;
   }
 
+  /** Waits until the position and size of a particular web element stop changing.
+   * The check runs in the page and returns once the element kept its bounding box for the
+   * configured stableFrames animation frames.
+   */
+  public void waitForElementPositionToBeStable(WebElement we) {
+    waitForElementPositionToBeStable(we, getWebDriverInstance());
+  }
+
+  /**
+   * This method is for parallel execution
+   * Waits until the position and size of a particular web element stop changing.
+   * Falls back to polling the location if the in-page check cannot run; a stale element is
+   * reported to the caller instead.
+   */
+  public void waitForElementPositionToBeStable(WebElement we, WebDriver driverParallel) {
+    int frames = Integer.parseInt(configProps.getProperty("stableFrames", "5").trim());
+    int timeout = Integer.parseInt(configProps.getProperty("avgTimeout"));
+    try {
+      if (!WaitTool.waitForElementToBeStable(driverParallel, we, frames, timeout)) {
+        logger.warn("Element {} did not become stable within {}s", WaitTool.locatorOf(we), timeout);
+      }
+      return;
+    } catch (JavascriptException | ScriptTimeoutException e) {
+      logger.warn("In-page stability check failed, polling the element location instead", e);
+    }
+    pollElementPositionToBeStable(we);
+  }
+
   /** Checks to see that the position of a particular web element is not changing.
    * If the element is not changing for at least 10 loops, we assume it's stable.
    * We cap the max number of times to check that the element is stable to avoid looping infinitely.
    */
-  public void waitForElementPositionToBeStable(WebElement we) {
+  private void pollElementPositionToBeStable(WebElement we) {
     int maxChecks = 500;
     int maxStableCount = 10;
     int lastX = -1;
@@ -996,8 +1118,8 @@ public class WebElements extends Driver {
       WebDriver driver = getWebDriverInstance();
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver, timeout);
-      wait.until(x -> x.findElements(By.xpath(xpath)));
+      WebDriverWait wait = new DeadlineWait(driver, timeout);
+      wait.until(x -> x.findElements(LocatorCompiler.compile(xpath)));
       present = true;
     } catch (Exception e) {
       logger.debug(e.getStackTrace());
@@ -1020,8 +1142,8 @@ public class WebElements extends Driver {
       WebDriver driver = driverParallel;
       // nullify implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-      WebDriverWait wait = new WebDriverWait(driver, timeout);
-      wait.until(x -> x.findElements(By.xpath(xpath)));
+      WebDriverWait wait = new DeadlineWait(driver, timeout);
+      wait.until(x -> x.findElements(LocatorCompiler.compile(xpath)));
       present = true;
     } catch (Exception e) {
       logger.debug(e.getStackTrace());
@@ -1045,7 +1167,7 @@ public class WebElements extends Driver {
    * @param timeout time to wait in seconds
    */
   public static void waitUntilTextInPageTitlePresent(String titleText, Duration timeout) {
-    WebDriverWait wait = new WebDriverWait(getWebDriverInstance(), timeout);
+    WebDriverWait wait = new DeadlineWait(getWebDriverInstance(), timeout);
     wait.until(x -> ExpectedConditions.titleContains(titleText));
   }
 
@@ -1055,7 +1177,7 @@ public class WebElements extends Driver {
    * @param timeout time to wait in seconds
    */
   public static void waitUntilTextInPageTitlePresent(String titleText, Duration timeout,WebDriver driver) {
-    WebDriverWait wait = new WebDriverWait(driver, timeout);
+    WebDriverWait wait = new DeadlineWait(driver, timeout);
     wait.until(x -> ExpectedConditions.titleContains(titleText));
   }
 
@@ -1064,7 +1186,7 @@ public class WebElements extends Driver {
    * @param element WebElement to wait for
    */
   public static void waitForElementClickable(WebElement element) {
-    WebDriverWait wait = new WebDriverWait(getWebDriverInstance(),
+    WebDriverWait wait = new DeadlineWait(getWebDriverInstance(),
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout"))));
     wait.until(x -> ExpectedConditions.elementToBeClickable(element));
   }
@@ -1074,13 +1196,13 @@ public class WebElements extends Driver {
    * @param element WebElement to wait for
    */
   public static void waitForElementClickable(WebElement element,WebDriver driverParallel) {
-    WebDriverWait wait = (WebDriverWait) new WebDriverWait(driverParallel,
+    WebDriverWait wait = (WebDriverWait) new DeadlineWait(driverParallel,
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout")))).ignoring(StaleElementReferenceException.class);
     wait.until( ExpectedConditions.elementToBeClickable(element));
   }
 
   public static void waitForElementClickableMin(WebElement element,WebDriver driverParallel) {
-    WebDriverWait wait = new WebDriverWait(driverParallel,
+    WebDriverWait wait = new DeadlineWait(driverParallel,
             Duration.ofSeconds(Integer.parseInt(configProps.getProperty("minTimeout"))));
     wait.until(ExpectedConditions.elementToBeClickable(element));
   }
@@ -1090,7 +1212,7 @@ public class WebElements extends Driver {
    * @param element WebElement to wait for
    */
   public static void waitForInvisibilityOfElement(WebElement element) {
-    WebDriverWait wait = new WebDriverWait(getWebDriverInstance(),
+    WebDriverWait wait = new DeadlineWait(getWebDriverInstance(),
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout"))));
     wait.until(x -> ExpectedConditions.invisibilityOf(element));
   }
@@ -1101,7 +1223,7 @@ public class WebElements extends Driver {
    * @param element WebElement to wait for
    */
   public static void waitForInvisibilityOfElement(WebElement element,WebDriver driverParallel) {
-    WebDriverWait wait = (WebDriverWait) new WebDriverWait(driverParallel,
+    WebDriverWait wait = (WebDriverWait) new DeadlineWait(driverParallel,
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout")))).ignoring(StaleElementReferenceException.class);
     wait.until( ExpectedConditions.invisibilityOf(element));
   }
@@ -1113,7 +1235,7 @@ public class WebElements extends Driver {
    * @param waitTime Number of seconds to wait
    */
   public static void waitForInvisibilityOfElement(WebElement element, long waitTime) {
-    WebDriverWait wait = new WebDriverWait(getWebDriverInstance(), Duration.ofSeconds(waitTime));
+    WebDriverWait wait = new DeadlineWait(getWebDriverInstance(), Duration.ofSeconds(waitTime));
     wait.until(x -> ExpectedConditions.invisibilityOf(element));
   }
 
@@ -1124,10 +1246,12 @@ public class WebElements extends Driver {
    * @param waitTime Number of seconds to wait
    */
   public static void waitForInvisibilityOfElement(WebElement element, long waitTime,WebDriver driverParallel) {
-    WebDriverWait wait = new WebDriverWait(driverParallel, Duration.ofSeconds(waitTime));
+    WebDriverWait wait = new DeadlineWait(driverParallel, Duration.ofSeconds(waitTime));
     int tries=0;
     int maxTries=Integer.parseInt(configProps.getProperty("maxRetries"));
     while(tries<maxTries) {
+      TestDeadline.check("waitForInvisibilityOfElement retry " + tries);
+      FrameworkEvents.retry("waitForInvisibilityOfElement", tries);
       try {
         wait.until(ExpectedConditions.invisibilityOf(element));
         break;
@@ -1144,9 +1268,9 @@ public class WebElements extends Driver {
    */
   public static void waitForInvisibilityOfElement(String xPath) {
 
-    WebDriverWait wait = new WebDriverWait(getWebDriverInstance(),
+    WebDriverWait wait = new DeadlineWait(getWebDriverInstance(),
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout"))));
-    wait.until(x -> ExpectedConditions.invisibilityOfElementLocated(By.xpath(xPath)));
+    wait.until(x -> ExpectedConditions.invisibilityOfElementLocated(LocatorCompiler.compile(xPath)));
   }
 
 
@@ -1158,9 +1282,9 @@ public class WebElements extends Driver {
    */
   public static void waitForInvisibilityOfElement(String xPath,WebDriver driverParallel) {
 
-    WebDriverWait wait = new WebDriverWait(driverParallel,
+    WebDriverWait wait = new DeadlineWait(driverParallel,
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout"))));
-    wait.until(ExpectedConditions.invisibilityOfElementLocated(By.xpath(xPath)));
+    wait.until(ExpectedConditions.invisibilityOfElementLocated(LocatorCompiler.compile(xPath)));
   }
 
   /** Waits for the element identified by xPath to be invisible.
@@ -1169,8 +1293,8 @@ public class WebElements extends Driver {
    * @param waitTime number of seconds to wait
    */
   public static void waitForInvisibilityOfElement(String xPath, long waitTime) {
-    WebDriverWait wait = new WebDriverWait(getWebDriverInstance(), Duration.ofSeconds(waitTime));
-    wait.until(x -> ExpectedConditions.invisibilityOfElementLocated(By.xpath(xPath)));
+    WebDriverWait wait = new DeadlineWait(getWebDriverInstance(), Duration.ofSeconds(waitTime));
+    wait.until(x -> ExpectedConditions.invisibilityOfElementLocated(LocatorCompiler.compile(xPath)));
   }
 
   /** Waits for the element identified by xPath to be invisible.
@@ -1181,9 +1305,9 @@ public class WebElements extends Driver {
     WebDriver driver = getWebDriverInstance();
     // nullify implicitlyWait
     driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-    WebDriverWait wait = new WebDriverWait(driver,
+    WebDriverWait wait = new DeadlineWait(driver,
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("maxTimeout"))));
-    wait.until(x -> ExpectedConditions.invisibilityOfElementLocated(By.xpath(xPath)));
+    wait.until(x -> ExpectedConditions.invisibilityOfElementLocated(LocatorCompiler.compile(xPath)));
   }
 
   /** Waits for the element to be invisible.
@@ -1193,9 +1317,9 @@ public class WebElements extends Driver {
     WebDriver driver = getWebDriverInstance();
     // nullify implicitlyWait
     driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-    WebDriverWait wait = new WebDriverWait(driver,
+    WebDriverWait wait = new DeadlineWait(driver,
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("maxTimeout"))));
-    wait.until(x -> ExpectedConditions.invisibilityOfElementLocated(By.xpath(this.getXPathLocator())));
+    wait.until(x -> ExpectedConditions.invisibilityOfElementLocated(LocatorCompiler.compile(this.getXPathLocator())));
   }
 
   /** Waits for all the elements to be invisible.
@@ -1203,7 +1327,7 @@ public class WebElements extends Driver {
    * @param elementList WebElement list to wait for
    */
   public static void waitForInvisibilityOfAllElements(List<WebElement> elementList) {
-    WebDriverWait wait = new WebDriverWait(getWebDriverInstance(),
+    WebDriverWait wait = new DeadlineWait(getWebDriverInstance(),
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout"))));
     wait.until(x -> ExpectedConditions.invisibilityOfAllElements(elementList));
   }
@@ -1213,7 +1337,7 @@ public class WebElements extends Driver {
    * @param element WebElement to wait for
    */
   public static void waitForVisibilityOfElement(WebElement element) {
-    WebDriverWait wait = new WebDriverWait(getWebDriverInstance(),
+    WebDriverWait wait = new DeadlineWait(getWebDriverInstance(),
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout"))));
     wait.until(x -> ExpectedConditions.visibilityOf(element));
   }
@@ -1226,7 +1350,7 @@ public class WebElements extends Driver {
    * @param driverParallel
    */
   public static void waitForVisibilityOfElement(WebElement element,WebDriver driverParallel) {
-    WebDriverWait wait = new WebDriverWait(driverParallel,
+    WebDriverWait wait = new DeadlineWait(driverParallel,
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout"))));
     wait.until(ExpectedConditions.visibilityOf(element));
   }
@@ -1237,9 +1361,9 @@ public class WebElements extends Driver {
    */
   public static void waitForVisibilityOfElement(String xPath) {
 
-    WebDriverWait wait = new WebDriverWait(getWebDriverInstance(),
+    WebDriverWait wait = new DeadlineWait(getWebDriverInstance(),
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout"))));
-    wait.until(ExpectedConditions.visibilityOfElementLocated(By.xpath(xPath)));
+    wait.until(ExpectedConditions.visibilityOfElementLocated(LocatorCompiler.compile(xPath)));
   }
 
   /**
@@ -1250,10 +1374,10 @@ public class WebElements extends Driver {
    */
   public static Boolean waitForVisibilityOfElement(String xPath,WebDriver driverParallel) {
 
-    WebDriverWait wait = new WebDriverWait(driverParallel,
+    WebDriverWait wait = new DeadlineWait(driverParallel,
         Duration.ofSeconds(Integer.parseInt(configProps.getProperty("avgTimeout"))));
-    wait.until( ExpectedConditions.visibilityOfElementLocated(By.xpath(xPath)));
-    return driverParallel.findElement(By.xpath(xPath)).isDisplayed();
+    wait.until( ExpectedConditions.visibilityOfElementLocated(LocatorCompiler.compile(xPath)));
+    return driverParallel.findElement(LocatorCompiler.compile(xPath)).isDisplayed();
   }
 
   /** Execute Javascript on the existing web element.
@@ -1454,7 +1578,7 @@ public class WebElements extends Driver {
   public WebElement getElement(By locatorTypeAndLocatorValue, int timeout, WebDriver driverParallel) {
     // nullify implicitlyWait
     driverParallel.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
-    WebDriverWait wait = new WebDriverWait(driverParallel, Duration.ofSeconds(timeout));
+    WebDriverWait wait = new DeadlineWait(driverParallel, Duration.ofSeconds(timeout));
     WebElement element = wait.until(x -> x.findElement(locatorTypeAndLocatorValue));
     Assert.assertTrue(element != null && element.isEnabled());
     return element;
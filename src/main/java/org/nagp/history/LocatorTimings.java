@@ -0,0 +1,275 @@
+package org.nagp.history;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.framework.Helper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Learns how long each locator takes to appear and derives wait timeouts from it.
+ *
+ * <p>Waits report the time an element took to show up via {@link #recordAppearance(String, long)}.
+ * At the end of the suite {@link #save()} folds this run's samples into the p50/p99 stored per
+ * locator in {@code locator-timings.tsv} in the history directory. {@link #timeoutSeconds(String, int)}
+ * then replaces the configured timeout with the learned p99 times {@code adaptiveTimeoutMargin},
+ * bounded by {@code adaptiveTimeoutFloor} and {@code adaptiveTimeoutCap}. Locators with fewer than
+ * {@code adaptiveTimeoutMinSamples} observations keep the timeout asked for by the caller.</p>
+ *
+ * <p>A wait for an element to appear that times out reports {@link #recordTimeout(String, long)}:
+ * the time waited is kept as a (censored) sample so the learned p99 grows, and the locator gets at
+ * least the requested timeout for the rest of the run. Timeouts are listed with the drifting
+ * locators. Presence checks, where the element not showing up can be the expected outcome, report
+ * only appearances.</p>
+ */
+public class LocatorTimings {
+    private static final Logger logger = LogManager.getLogger(LocatorTimings.class);
+    private static final String TIMINGS_FILE_NAME = "locator-timings.tsv";
+    private static final String HEADER = "locator\tsamples\tp50Ms\tp99Ms";
+    private static final int MAX_SAMPLES_PER_RUN = 500;
+    /** Weight of the stored baseline is capped so that timings can still move over a few runs. */
+    private static final int BASELINE_WEIGHT_CAP = 100;
+    private static LocatorTimings instance;
+
+    private final Path timingsFile;
+    private final boolean adaptive;
+    private final double margin;
+    private final int floorSeconds;
+    private final int capSeconds;
+    private final int minSamples;
+    private final double driftRatio;
+    private final Map<String, Stats> baseline = new ConcurrentHashMap<>();
+    private final Map<String, long[]> samples = new ConcurrentHashMap<>();
+    private final Map<String, Integer> sampleCounts = new ConcurrentHashMap<>();
+    private final Map<String, Integer> timeouts = new ConcurrentHashMap<>();
+
+    public static synchronized LocatorTimings getInstance() {
+        if (instance == null) {
+            Properties configProps = new Helper().readConfig();
+            instance = new LocatorTimings(ResultsHistory.getHistoryDirectory(configProps), configProps);
+        }
+        return instance;
+    }
+
+    public LocatorTimings(Path historyDirectory, Properties configProps) {
+        this.timingsFile = historyDirectory.resolve(TIMINGS_FILE_NAME);
+        this.adaptive = Boolean.parseBoolean(configProps.getProperty("adaptiveTimeouts", "false").trim());
+        this.margin = Double.parseDouble(configProps.getProperty("adaptiveTimeoutMargin", "2.0").trim());
+        this.floorSeconds = Integer.parseInt(configProps.getProperty("adaptiveTimeoutFloor", "2").trim());
+        this.capSeconds = Integer.parseInt(configProps.getProperty("adaptiveTimeoutCap", "60").trim());
+        this.minSamples = Integer.parseInt(configProps.getProperty("adaptiveTimeoutMinSamples", "5").trim());
+        this.driftRatio = Double.parseDouble(configProps.getProperty("locatorDriftRatio", "1.5").trim());
+        load();
+    }
+
+    /** Record how long a locator took to match an element.
+     *
+     * @param locator locator description, e.g. By.toString()
+     * @param millis time from the start of the wait until the element was found
+     */
+    public void recordAppearance(String locator, long millis) {
+        if (locator == null) {
+            return;
+        }
+        synchronized (samples) {
+            long[] values = samples.get(locator);
+            int count = sampleCounts.getOrDefault(locator, 0);
+            if (values == null) {
+                values = new long[16];
+            } else if (count == values.length && count < MAX_SAMPLES_PER_RUN) {
+                values = Arrays.copyOf(values, Math.min(values.length * 2, MAX_SAMPLES_PER_RUN));
+            }
+            // Once full, overwrite round robin so the run keeps a bounded, recent sample.
+            values[count % values.length] = millis;
+            samples.put(locator, values);
+            sampleCounts.put(locator, count + 1);
+        }
+    }
+
+    /** Record that a wait on a locator timed out. The element took at least as long as the wait, so
+     * that time is recorded as a sample, and later waits on the locator in this run use at least the
+     * timeout their caller asks for.
+     *
+     * @param locator locator description, e.g. By.toString()
+     * @param millis time from the start of the wait until it gave up
+     */
+    public void recordTimeout(String locator, long millis) {
+        if (locator == null) {
+            return;
+        }
+        timeouts.merge(locator, 1, Integer::sum);
+        recordAppearance(locator, millis);
+    }
+
+    /** Timeout to use for a wait on the given locator.
+     *
+     * @param locator locator description, e.g. By.toString()
+     * @param requestedSeconds timeout the caller asked for
+     * @return learned timeout in seconds, or requestedSeconds if adaptive timeouts are disabled
+     *      or the locator has too few observations
+     */
+    public int timeoutSeconds(String locator, int requestedSeconds) {
+        if (!adaptive || locator == null) {
+            return requestedSeconds;
+        }
+        Stats stats = currentStats(locator);
+        if (stats == null || stats.samples < minSamples) {
+            return requestedSeconds;
+        }
+        long learned = (long) Math.ceil(stats.p99 * margin / 1000.0);
+        int timeout = (int) Math.max(floorSeconds, Math.min(capSeconds, learned));
+        if (timeouts.containsKey(locator)) {
+            timeout = Math.max(timeout, requestedSeconds);
+        }
+        if (timeout != requestedSeconds) {
+            logger.debug("Adaptive timeout for {}: {}s instead of {}s (p99 {} ms)", locator, timeout,
+                    requestedSeconds, stats.p99);
+        }
+        return timeout;
+    }
+
+    /** Locators that timed out in this run, and those whose median appearance time in this run
+     * moved by more than locatorDriftRatio compared to the stored baseline.
+     *
+     * @return one human readable line per timing out or drifting locator
+     */
+    public List<String> driftingLocators() {
+        List<String> drifting = new ArrayList<>();
+        for (Map.Entry<String, Integer> timedOut : new TreeMap<>(timeouts).entrySet()) {
+            Stats before = baseline.get(timedOut.getKey());
+            drifting.add(String.format("%s timed out %d times (stored p99 %s)", timedOut.getKey(),
+                    timedOut.getValue(), before == null ? "none" : before.p99 + " ms"));
+        }
+        for (Map.Entry<String, Stats> run : runStats().entrySet()) {
+            Stats before = baseline.get(run.getKey());
+            Stats now = run.getValue();
+            if (before == null || now.samples < minSamples || before.p50 <= 0) {
+                continue;
+            }
+            double ratio = (double) Math.max(now.p50, 1) / before.p50;
+            if (ratio >= driftRatio || ratio <= 1 / driftRatio) {
+                drifting.add(String.format("%s p50 %d ms -> %d ms (x%.2f), p99 %d ms -> %d ms",
+                        run.getKey(), before.p50, now.p50, ratio, before.p99, now.p99));
+            }
+        }
+        return drifting;
+    }
+
+    /** Merge this run's samples into the stored p50/p99 and write them to disk. */
+    public synchronized void save() {
+        Map<String, Stats> merged = new TreeMap<>(baseline);
+        for (Map.Entry<String, Stats> run : runStats().entrySet()) {
+            merged.put(run.getKey(), merge(baseline.get(run.getKey()), run.getValue()));
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        for (Map.Entry<String, Stats> entry : merged.entrySet()) {
+            Stats stats = entry.getValue();
+            lines.add(entry.getKey().replace('\t', ' ') + "\t" + stats.samples + "\t" + stats.p50 + "\t" + stats.p99);
+        }
+        try {
+            Files.createDirectories(timingsFile.getParent());
+            Path partial = timingsFile.resolveSibling(TIMINGS_FILE_NAME + ".part");
+            Files.write(partial, lines, StandardCharsets.UTF_8);
+            Files.move(partial, timingsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Saved appearance timings of {} locators to {}", merged.size(), timingsFile);
+        } catch (IOException e) {
+            logger.warn("Unable to save locator timings to {}", timingsFile, e);
+        }
+    }
+
+    private Stats currentStats(String locator) {
+        Stats run = statsOf(locator);
+        Stats before = baseline.get(locator);
+        return run == null ? before : merge(before, run);
+    }
+
+    private Map<String, Stats> runStats() {
+        Map<String, Stats> stats = new TreeMap<>();
+        for (String locator : new ArrayList<>(sampleCounts.keySet())) {
+            Stats run = statsOf(locator);
+            if (run != null) {
+                stats.put(locator, run);
+            }
+        }
+        return stats;
+    }
+
+    private Stats statsOf(String locator) {
+        long[] sorted;
+        int count;
+        synchronized (samples) {
+            long[] values = samples.get(locator);
+            if (values == null) {
+                return null;
+            }
+            count = sampleCounts.get(locator);
+            sorted = Arrays.copyOf(values, Math.min(count, values.length));
+        }
+        Arrays.sort(sorted);
+        return new Stats(count, nearestRank(sorted, 50), nearestRank(sorted, 99));
+    }
+
+    private static long nearestRank(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+
+    /** Weighted blend of the stored baseline and this run's statistics. */
+    private static Stats merge(Stats before, Stats run) {
+        if (before == null) {
+            return run;
+        }
+        double baselineWeight = Math.min(before.samples, BASELINE_WEIGHT_CAP);
+        double runWeight = run.samples;
+        double total = baselineWeight + runWeight;
+        return new Stats(before.samples + run.samples,
+                Math.round((before.p50 * baselineWeight + run.p50 * runWeight) / total),
+                Math.round((before.p99 * baselineWeight + run.p99 * runWeight) / total));
+    }
+
+    private void load() {
+        if (!Files.exists(timingsFile)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(timingsFile, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t");
+                if (parts.length < 4 || line.startsWith("locator\t")) {
+                    continue;
+                }
+                try {
+                    baseline.put(parts[0], new Stats(Integer.parseInt(parts[1]), Long.parseLong(parts[2]),
+                            Long.parseLong(parts[3])));
+                } catch (NumberFormatException e) {
+                    logger.debug("Skipping malformed locator timing line: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to read locator timings from {}", timingsFile, e);
+        }
+    }
+
+    private static class Stats {
+        final int samples;
+        final long p50;
+        final long p99;
+
+        Stats(int samples, long p50, long p99) {
+            this.samples = samples;
+            this.p50 = p50;
+            this.p99 = p99;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.nagp.history;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.dataProvider.Constants;
+import org.nagp.framework.Helper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * Embedded, file backed store of past test executions.
+ *
+ * <p>Every finished test is appended as one line to {@code results-history.tsv} in the history
+ * directory (TestHistory under the resources folder unless {@code historyDirectory} is configured).
+ * The file is read once per JVM and kept in memory, so queries are cheap. Only the most recent
+ * {@code historyMaxRunsPerTest} records of each test are kept; the file is compacted on load.</p>
+ *
+ * <pre>
+ *   ResultsHistory history = ResultsHistory.getInstance();
+ *   OptionalLong p90 = history.percentile(testId, TestRunRecord::getDurationMillis, 90);
+ *   double failureRate = history.failureRate(testId, 10);
+ * </pre>
+ */
+public class ResultsHistory {
+    private static final Logger logger = LogManager.getLogger(ResultsHistory.class);
+    private static final String HISTORY_FILE_NAME = "results-history.tsv";
+    private static ResultsHistory instance;
+
+    private final Path historyFile;
+    private final int maxRunsPerTest;
+    private final String runId = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+    private final Map<String, List<TestRunRecord>> recordsByTest = new LinkedHashMap<>();
+
+    public static synchronized ResultsHistory getInstance() {
+        if (instance == null) {
+            Properties configProps = new Helper().readConfig();
+            instance = new ResultsHistory(getHistoryDirectory(configProps),
+                    Integer.parseInt(configProps.getProperty("historyMaxRunsPerTest", "50").trim()));
+        }
+        return instance;
+    }
+
+    /** Resolve the directory holding history files, shared with the other stores in this package.
+     *
+     * @param configProps configuration properties
+     * @return the configured history directory or TestHistory under the resources folder
+     */
+    public static Path getHistoryDirectory(Properties configProps) {
+        String configured = configProps.getProperty("historyDirectory", "").trim();
+        return configured.isEmpty() ? Paths.get(Constants.UPLOAD_PATH, "TestHistory") : Paths.get(configured);
+    }
+
+    public ResultsHistory(Path historyDirectory, int maxRunsPerTest) {
+        this.historyFile = historyDirectory.resolve(HISTORY_FILE_NAME);
+        this.maxRunsPerTest = maxRunsPerTest;
+        load();
+    }
+
+    /** Id of the current suite run; used to tag every record written by this JVM. */
+    public String getRunId() {
+        return runId;
+    }
+
+    /** Append a finished test to the history.
+     *
+     * @param record test execution to persist
+     */
+    public synchronized void record(TestRunRecord record) {
+        addInMemory(record);
+        try {
+            Files.createDirectories(historyFile.getParent());
+            boolean newFile = !Files.exists(historyFile);
+            try (BufferedWriter writer = Files.newBufferedWriter(historyFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (newFile) {
+                    writer.write(TestRunRecord.HEADER);
+                    writer.newLine();
+                }
+                writer.write(record.toLine());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to write test history to {}", historyFile, e);
+        }
+    }
+
+    /** @return ids of every test with at least one record */
+    public synchronized Set<String> testIds() {
+        return new LinkedHashSet<>(recordsByTest.keySet());
+    }
+
+    /** @param testId test to look up
+     * @return all stored records of the test, oldest first */
+    public synchronized List<TestRunRecord> recordsFor(String testId) {
+        List<TestRunRecord> records = recordsByTest.get(testId);
+        return records == null ? Collections.<TestRunRecord>emptyList() : new ArrayList<>(records);
+    }
+
+    /** @param testId test to look up
+     * @param limit maximum number of records
+     * @return the most recent records of the test, oldest first */
+    public synchronized List<TestRunRecord> recentRecordsFor(String testId, int limit) {
+        List<TestRunRecord> records = recordsFor(testId);
+        return records.subList(Math.max(0, records.size() - limit), records.size());
+    }
+
+    /** @param testId test to look up
+     * @return the most recent record of the test, or null if it never ran */
+    public synchronized TestRunRecord lastRecord(String testId) {
+        List<TestRunRecord> records = recordsByTest.get(testId);
+        return records == null || records.isEmpty() ? null : records.get(records.size() - 1);
+    }
+
+    /** Nearest-rank percentile of a metric over the stored records of a test.
+     *
+     * @param testId test to look up
+     * @param metric value to take from each record, e.g. TestRunRecord::getDurationMillis
+     * @param percentile percentile between 0 and 100
+     * @return the percentile, or empty if the test has no records
+     */
+    public synchronized OptionalLong percentile(String testId, ToLongFunction<TestRunRecord> metric,
+                                                double percentile) {
+        return percentileOf(recordsFor(testId), metric, percentile);
+    }
+
+    /** Nearest-rank percentile of a metric over all stored records, e.g. session launch times.
+     * Records where the metric is 0 are ignored.
+     *
+     * @param metric value to take from each record
+     * @param percentile percentile between 0 and 100
+     * @return the percentile, or empty if no record has the metric
+     */
+    public synchronized OptionalLong percentileOverAll(ToLongFunction<TestRunRecord> metric, double percentile) {
+        List<TestRunRecord> all = new ArrayList<>();
+        for (List<TestRunRecord> records : recordsByTest.values()) {
+            for (TestRunRecord record : records) {
+                if (metric.applyAsLong(record) > 0) {
+                    all.add(record);
+                }
+            }
+        }
+        return percentileOf(all, metric, percentile);
+    }
+
+    /** @param testId test to look up
+     * @param lastRuns number of most recent records to consider
+     * @return share of failed executions between 0 and 1; 0 when the test never ran */
+    public synchronized double failureRate(String testId, int lastRuns) {
+        List<TestRunRecord> recent = recentRecordsFor(testId, lastRuns);
+        if (recent.isEmpty()) {
+            return 0;
+        }
+        int failures = 0;
+        for (TestRunRecord record : recent) {
+            if (record.isFailure()) {
+                failures++;
+            }
+        }
+        return (double) failures / recent.size();
+    }
+
+    static OptionalLong percentileOf(List<TestRunRecord> records, ToLongFunction<TestRunRecord> metric,
+                                     double percentile) {
+        if (records.isEmpty()) {
+            return OptionalLong.empty();
+        }
+        long[] values = new long[records.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = metric.applyAsLong(records.get(i));
+        }
+        Arrays.sort(values);
+        int rank = (int) Math.ceil(percentile / 100.0 * values.length);
+        return OptionalLong.of(values[Math.min(values.length - 1, Math.max(0, rank - 1))]);
+    }
+
+    private void addInMemory(TestRunRecord record) {
+        List<TestRunRecord> records = recordsByTest.get(record.getTestId());
+        if (records == null) {
+            records = new ArrayList<>();
+            recordsByTest.put(record.getTestId(), records);
+        }
+        records.add(record);
+        if (records.size() > maxRunsPerTest) {
+            records.remove(0);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(historyFile)) {
+            return;
+        }
+        int lines = 0;
+        try {
+            for (String line : Files.readAllLines(historyFile, StandardCharsets.UTF_8)) {
+                TestRunRecord record = TestRunRecord.fromLine(line);
+                if (record != null) {
+                    addInMemory(record);
+                    lines++;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to read test history from {}", historyFile, e);
+            return;
+        }
+        int kept = 0;
+        for (List<TestRunRecord> records : recordsByTest.values()) {
+            kept += records.size();
+        }
+        if (kept < lines) {
+            compact();
+        }
+        logger.info("Loaded {} test history records for {} tests", kept, recordsByTest.size());
+    }
+
+    /** Rewrite the history file with only the records kept in memory. */
+    private void compact() {
+        List<String> lines = new ArrayList<>();
+        lines.add(TestRunRecord.HEADER);
+        for (List<TestRunRecord> records : recordsByTest.values()) {
+            for (TestRunRecord record : records) {
+                lines.add(record.toLine());
+            }
+        }
+        Path partial = historyFile.resolveSibling(HISTORY_FILE_NAME + ".part");
+        try {
+            Files.write(partial, lines, StandardCharsets.UTF_8);
+            Files.move(partial, historyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to compact test history {}", historyFile, e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.nagp.history;
+
+/** One finished test execution as stored in the results history.
+ *
+ */
+public class TestRunRecord {
+    public static final String HEADER =
+            "runId\tstartedAt\ttestId\toutcome\tdurationMs\tretries\tsessionLaunchMs\twaitMs\tsetupMs";
+
+    private final String runId;
+    private final long startedAt;
+    private final String testId;
+    private final String outcome;
+    private final long durationMillis;
+    private final int retries;
+    private final long sessionLaunchMillis;
+    private final long waitMillis;
+    private final long setupMillis;
+
+    /**
+     * @param runId id of the suite run the test belonged to
+     * @param startedAt epoch millis when the test started
+     * @param testId fully qualified class name and method, e.g. org.nagp.tests.HomePageTests.verifyX
+     * @param outcome PASS, FAIL or SKIP
+     * @param durationMillis time the test method took
+     * @param retries number of retried attempts before this outcome
+     * @param sessionLaunchMillis browser launch time if this test was the first on a new session, else 0
+     * @param waitMillis time spent inside explicit waits
+     * @param setupMillis time the test's @BeforeMethod configuration took, e.g. its start page load
+     */
+    public TestRunRecord(String runId, long startedAt, String testId, String outcome, long durationMillis,
+                         int retries, long sessionLaunchMillis, long waitMillis, long setupMillis) {
+        this.runId = runId;
+        this.startedAt = startedAt;
+        this.testId = testId;
+        this.outcome = outcome;
+        this.durationMillis = durationMillis;
+        this.retries = retries;
+        this.sessionLaunchMillis = sessionLaunchMillis;
+        this.waitMillis = waitMillis;
+        this.setupMillis = setupMillis;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public String getTestId() {
+        return testId;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public boolean isFailure() {
+        return "FAIL".equals(outcome);
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public long getSessionLaunchMillis() {
+        return sessionLaunchMillis;
+    }
+
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    public long getSetupMillis() {
+        return setupMillis;
+    }
+
+    /** @return time the test held its thread: setup plus test method, without the session launch */
+    public long getElapsedMillis() {
+        return setupMillis + durationMillis;
+    }
+
+    /** Serialize the record as one tab separated line. */
+    String toLine() {
+        return runId + "\t" + startedAt + "\t" + testId + "\t" + outcome + "\t" + durationMillis + "\t"
+                + retries + "\t" + sessionLaunchMillis + "\t" + waitMillis + "\t" + setupMillis;
+    }
+
+    /** Parse a line written by {@link #toLine()}.
+     *
+     * @param line tab separated record, without setupMs if written before that column existed
+     * @return the record, or null if the line is a header or malformed
+     */
+    static TestRunRecord fromLine(String line) {
+        String[] parts = line.split("\t");
+        if (parts.length < 8 || line.startsWith("runId\t")) {
+            return null;
+        }
+        try {
+            return new TestRunRecord(parts[0], Long.parseLong(parts[1]), parts[2], parts[3],
+                    Long.parseLong(parts[4]), Integer.parseInt(parts[5]), Long.parseLong(parts[6]),
+                    Long.parseLong(parts[7]), parts.length > 8 ? Long.parseLong(parts[8]) : 0);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.nagp.listeners;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.framework.Helper;
+import org.nagp.history.ResultsHistory;
+import org.nagp.history.TestRunRecord;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ISuite;
+import org.testng.ISuiteResult;
+import org.testng.ITestContext;
+import org.testng.ITestResult;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Hands the test classes to the worker threads longest first, so that with {@code parallel="classes"}
+ * a slow class starts early instead of deciding the end of the run.
+ *
+ * <p>A class is predicted to take the median session launch plus the median durations of its tests,
+ * {@code @BeforeMethod} setup included, in the {@link ResultsHistory}; tests without history count
+ * as the average known test. TestNG gives each class to the next free thread in the order returned
+ * here, which makes this longest-processing-time-first scheduling. The predicted schedule is
+ * compared with the actual one in schedule-balance.txt at the end of the suite. A class predicted
+ * to take longer than an even share of the run is listed there as a candidate for splitting, since
+ * its tests share one session and always run on one thread.</p>
+ */
+public class DurationBalancingInterceptor implements IMethodInterceptor {
+    private static final Logger logger = LogManager.getLogger(DurationBalancingInterceptor.class);
+    private static final Map<String, Schedule> schedules = new LinkedHashMap<>();
+
+    private Helper helper = new Helper();
+    private final Properties configProps = helper.readConfig();
+
+    /** Predicted run of the classes of one &lt;test&gt; over its threads. */
+    private static final class Schedule {
+        final int workers;
+        final Map<String, Long> predictedMillis = new LinkedHashMap<>();
+        final Map<String, Integer> workerOf = new HashMap<>();
+        long makespanMillis;
+
+        Schedule(int workers) {
+            this.workers = workers;
+        }
+    }
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        if (!Boolean.parseBoolean(configProps.getProperty("balanceByDuration", "true").trim())) {
+            return methods;
+        }
+        Map<Object, List<IMethodInstance>> classes = new LinkedHashMap<>();
+        for (IMethodInstance method : methods) {
+            Object session = method.getInstance() != null ? method.getInstance() : method.getMethod().getRealClass();
+            classes.computeIfAbsent(session, key -> new ArrayList<>()).add(method);
+        }
+        ResultsHistory history = ResultsHistory.getInstance();
+        Map<String, Long> known = new HashMap<>();
+        for (IMethodInstance method : methods) {
+            String testId = testId(method);
+            OptionalLong median = history.percentile(testId, TestRunRecord::getElapsedMillis, 50);
+            if (median.isPresent()) {
+                known.put(testId, median.getAsLong());
+            }
+        }
+        if (known.isEmpty() || classes.size() < 2) {
+            logger.debug("No durations to balance {} on", context.getName());
+            return methods;
+        }
+        long unknown = known.values().stream().mapToLong(Long::longValue).sum() / known.size();
+        long launch = history.percentileOverAll(TestRunRecord::getSessionLaunchMillis, 50).orElse(0);
+        Map<List<IMethodInstance>, Long> predicted = new HashMap<>();
+        for (List<IMethodInstance> tests : classes.values()) {
+            long millis = launch;
+            for (IMethodInstance test : tests) {
+                millis += known.getOrDefault(testId(test), unknown);
+            }
+            predicted.put(tests, millis);
+        }
+        List<List<IMethodInstance>> longestFirst = new ArrayList<>(classes.values());
+        longestFirst.sort(Comparator.comparing(predicted::get, Comparator.reverseOrder()));
+
+        Schedule schedule = new Schedule(workers(context));
+        long[] loads = new long[schedule.workers];
+        List<IMethodInstance> ordered = new ArrayList<>(methods.size());
+        for (List<IMethodInstance> tests : longestFirst) {
+            int worker = 0;
+            for (int i = 1; i < loads.length; i++) {
+                if (loads[i] < loads[worker]) {
+                    worker = i;
+                }
+            }
+            loads[worker] += predicted.get(tests);
+            String className = tests.get(0).getMethod().getRealClass().getName();
+            schedule.predictedMillis.merge(className, predicted.get(tests), Long::sum);
+            schedule.workerOf.put(className, worker + 1);
+            ordered.addAll(tests);
+        }
+        for (long load : loads) {
+            schedule.makespanMillis = Math.max(schedule.makespanMillis, load);
+        }
+        synchronized (schedules) {
+            schedules.put(context.getName(), schedule);
+        }
+        logger.info("Balanced {} classes of {} over {} threads, predicted makespan {}",
+                classes.size(), context.getName(), schedule.workers, seconds(schedule.makespanMillis));
+        return ordered;
+    }
+
+    /** Predicted against actual schedule of each &lt;test&gt; of the suite that was balanced.
+     *
+     * @param suite finished suite
+     * @return report lines, empty if nothing was balanced
+     */
+    public static List<String> report(ISuite suite) {
+        List<String> lines = new ArrayList<>();
+        for (ISuiteResult result : suite.getResults().values()) {
+            ITestContext context = result.getTestContext();
+            Schedule schedule;
+            synchronized (schedules) {
+                schedule = schedules.remove(context.getName());
+            }
+            if (schedule == null) {
+                continue;
+            }
+            Map<String, long[]> spans = new HashMap<>();
+            long first = Long.MAX_VALUE;
+            long last = 0;
+            for (ITestResult test : allResults(context)) {
+                long[] span = spans.computeIfAbsent(test.getMethod().getRealClass().getName(),
+                        key -> new long[] {Long.MAX_VALUE, 0});
+                span[0] = Math.min(span[0], test.getStartMillis());
+                span[1] = Math.max(span[1], test.getEndMillis());
+                first = Math.min(first, test.getStartMillis());
+                last = Math.max(last, test.getEndMillis());
+            }
+            long total = schedule.predictedMillis.values().stream().mapToLong(Long::longValue).sum();
+            long evenShare = total / schedule.workers;
+            lines.add(context.getName() + ": " + schedule.workers + " threads, predicted makespan "
+                    + seconds(schedule.makespanMillis) + " (even share " + seconds(evenShare) + "), actual "
+                    + (last == 0 ? "n/a" : seconds(last - first)));
+            for (Map.Entry<String, Long> entry : schedule.predictedMillis.entrySet()) {
+                long[] span = spans.get(entry.getKey());
+                lines.add(String.format(Locale.ROOT, "  thread %d  %-50s predicted %8s  actual %8s%s",
+                        schedule.workerOf.get(entry.getKey()), entry.getKey(), seconds(entry.getValue()),
+                        span == null ? "n/a" : seconds(span[1] - span[0]),
+                        entry.getValue() > evenShare && evenShare > 0 ? "  (longer than an even share: split candidate)" : ""));
+            }
+        }
+        return lines;
+    }
+
+    private static List<ITestResult> allResults(ITestContext context) {
+        List<ITestResult> results = new ArrayList<>();
+        for (Set<ITestResult> outcome : Arrays.asList(context.getPassedTests().getAllResults(),
+                context.getFailedTests().getAllResults(), context.getSkippedTests().getAllResults(),
+                context.getFailedButWithinSuccessPercentageTests().getAllResults())) {
+            results.addAll(outcome);
+        }
+        return results;
+    }
+
+    private static int workers(ITestContext context) {
+        XmlTest test = context.getCurrentXmlTest();
+        XmlSuite.ParallelMode parallel = test.getParallel();
+        return parallel == null || !parallel.isParallel() ? 1 : Math.max(1, test.getThreadCount());
+    }
+
+    private static String testId(IMethodInstance method) {
+        return method.getMethod().getRealClass().getName() + "." + method.getMethod().getConstructorOrMethod().getName();
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%.1f s", millis / 1000.0);
+    }
+}
@@ -0,0 +1,227 @@
+package org.nagp.listeners;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.framework.Helper;
+import org.nagp.history.ResultsHistory;
+import org.nagp.history.TestRunRecord;
+import org.nagp.navigation.Navigator;
+import org.nagp.navigation.StartsOn;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ISuite;
+import org.testng.ISuiteResult;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+import org.testng.SkipException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional ordering for pre-merge runs that cares about the time to the first failure: the tests
+ * most likely to fail run first, and the run stops after {@code failFastMaxFailures} failures.
+ *
+ * <p>A test's risk is its failure rate over the last {@code failFastRecentRuns} runs in the
+ * {@link ResultsHistory}, plus one if it touches a page object or test class changed since the last
+ * green run (or since the git ref in {@code failFastSince}). A test touches its own class, the page
+ * objects (classes of the pages package) its class holds in fields and the page it {@link StartsOn}.
+ * Only final failures count towards the stop; attempts that the retry analyzer runs again do not.
+ * Equally risky tests run shortest first. Within the parallel classes, riskier classes start first
+ * and tests keep sharing their class's session, so this ordering replaces the state affinity and
+ * duration ordering while it is on.</p>
+ */
+public class FailFastInterceptor implements IMethodInterceptor, IInvokedMethodListener, ITestListener {
+    private static final Logger logger = LogManager.getLogger(FailFastInterceptor.class);
+    private static final String LAST_GREEN_FILE = "last-green-commit";
+    private static final String SOURCE_ROOT = "src/main/java/";
+    private static final String PAGES_PACKAGE = "org.nagp.pages";
+
+    private Helper helper = new Helper();
+    private final Properties configProps = helper.readConfig();
+    private final boolean enabled = Boolean.parseBoolean(configProps.getProperty("failFast", "false").trim());
+    private final int maxFailures = Integer.parseInt(configProps.getProperty("failFastMaxFailures", "0").trim());
+    private final AtomicInteger failures = new AtomicInteger();
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        if (!enabled) {
+            return methods;
+        }
+        Set<String> changed = changedClasses(configProps);
+        ResultsHistory history = ResultsHistory.getInstance();
+        int recentRuns = Integer.parseInt(configProps.getProperty("failFastRecentRuns", "10").trim());
+        Map<IMethodInstance, Double> risk = new HashMap<>();
+        Map<IMethodInstance, Long> duration = new HashMap<>();
+        Map<Object, List<IMethodInstance>> classes = new LinkedHashMap<>();
+        for (IMethodInstance method : methods) {
+            Method testMethod = method.getMethod().getConstructorOrMethod().getMethod();
+            String testId = method.getMethod().getRealClass().getName() + "." + testMethod.getName();
+            boolean touchesChange = changed != null && !Collections.disjoint(changed, touchedClasses(testMethod));
+            risk.put(method, history.failureRate(testId, recentRuns) + (touchesChange ? 1 : 0));
+            duration.put(method, history.percentile(testId, TestRunRecord::getDurationMillis, 50).orElse(0));
+            Object session = method.getInstance() != null ? method.getInstance() : method.getMethod().getRealClass();
+            classes.computeIfAbsent(session, key -> new ArrayList<>()).add(method);
+        }
+        Comparator<IMethodInstance> riskiestFirst = Comparator.<IMethodInstance, Double>comparing(risk::get)
+                .reversed().thenComparing(duration::get);
+        List<List<IMethodInstance>> ordered = new ArrayList<>();
+        for (List<IMethodInstance> tests : classes.values()) {
+            List<IMethodInstance> sorted = new ArrayList<>(tests);
+            sorted.sort(riskiestFirst);
+            ordered.add(sorted);
+        }
+        ordered.sort(Comparator.comparing(tests -> tests.get(0), riskiestFirst));
+        List<IMethodInstance> result = new ArrayList<>(methods.size());
+        for (List<IMethodInstance> tests : ordered) {
+            for (IMethodInstance test : tests) {
+                result.add(test);
+                logger.info("Fail-fast order {}: {}.{} risk {}", result.size(),
+                        test.getMethod().getRealClass().getSimpleName(), test.getMethod().getMethodName(),
+                        String.format(Locale.ROOT, "%.2f", risk.get(test)));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void beforeInvocation(IInvokedMethod method, ITestResult testResult) {
+        if (enabled && maxFailures > 0 && method.isTestMethod() && failures.get() >= maxFailures) {
+            throw new SkipException("Fail-fast: the run stopped after " + failures.get() + " failures");
+        }
+    }
+
+    @Override
+    public void onTestFailure(ITestResult result) {
+        // Attempts the retry analyzer runs again are reported as skipped, so this sees final failures only
+        if (enabled && failures.incrementAndGet() == maxFailures) {
+            logger.warn("Fail-fast: {} failures, skipping the remaining tests", maxFailures);
+        }
+    }
+
+    /** Remember the commit of a suite run without failures as the last green run.
+     *
+     * @param suite finished suite
+     */
+    public static void recordGreenRun(ISuite suite) {
+        int run = 0;
+        for (ISuiteResult result : suite.getResults().values()) {
+            ITestContext context = result.getTestContext();
+            if (!context.getFailedTests().getAllResults().isEmpty()) {
+                return;
+            }
+            run += context.getPassedTests().size();
+        }
+        List<String> head = run == 0 ? null : git("rev-parse", "HEAD");
+        if (head == null || head.isEmpty()) {
+            return;
+        }
+        Path file = ResultsHistory.getHistoryDirectory(new Helper().readConfig()).resolve(LAST_GREEN_FILE);
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, head, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Unable to write {}", file, e);
+        }
+    }
+
+    /** Simple names of the classes under the source root changed since the baseline, including
+     * uncommitted changes, or null if git cannot tell. */
+    private static Set<String> changedClasses(Properties configProps) {
+        String since = configProps.getProperty("failFastSince", "").trim();
+        if (since.isEmpty()) {
+            Path file = ResultsHistory.getHistoryDirectory(configProps).resolve(LAST_GREEN_FILE);
+            try {
+                since = Files.exists(file) ? new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim() : "HEAD";
+            } catch (IOException e) {
+                logger.warn("Unable to read {}", file, e);
+                since = "HEAD";
+            }
+        }
+        List<String> files = git("diff", "--name-only", since, "--", SOURCE_ROOT);
+        if (files == null) {
+            logger.warn("Unable to list the changes since {}; ranking by failure rate only", since);
+            return null;
+        }
+        Set<String> classes = new HashSet<>();
+        for (String name : files) {
+            if (name.endsWith(".java")) {
+                classes.add(name.substring(name.lastIndexOf('/') + 1, name.length() - ".java".length()));
+            }
+        }
+        logger.info("Classes changed since {}: {}", since, classes);
+        return classes;
+    }
+
+    /** Simple names of the test class, the page objects it holds and the page the test starts on.
+     * Other field types such as Helper or TestDriver are framework code every test shares. */
+    private static Set<String> touchedClasses(Method testMethod) {
+        Set<String> touched = new HashSet<>();
+        touched.add(testMethod.getDeclaringClass().getSimpleName());
+        for (Class<?> type = testMethod.getDeclaringClass(); type != null; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                Package fieldPackage = field.getType().getPackage();
+                if (fieldPackage != null && fieldPackage.getName().equals(PAGES_PACKAGE)) {
+                    touched.add(field.getType().getSimpleName());
+                }
+            }
+        }
+        StartsOn start = Navigator.startOf(testMethod);
+        if (start != null) {
+            touched.add(start.value().getSimpleName());
+        }
+        return touched;
+    }
+
+    /** @return the output lines of a git command in the working directory, or null if it failed */
+    private static List<String> git(String... args) {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    lines.add(line);
+                }
+            }
+            if (!process.waitFor(10, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                process.destroy();
+                logger.debug("git {} failed: {}", command, lines);
+                return null;
+            }
+            return lines;
+        } catch (IOException e) {
+            logger.debug("git is not available", e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.nagp.listeners;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.framework.Helper;
+import org.nagp.navigation.Navigator;
+import org.nagp.navigation.StartsOn;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+import org.testng.ITestNGMethod;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Orders the tests of each class, which share one browser session, so that tests starting on the
+ * same page or state (see {@link StartsOn}) run back to back. The reset or restore before a test
+ * skips the page load only when the session is still on that start exactly as it was loaded, so
+ * grouping saves loads only after tests that leave the page untouched; tests that click or type
+ * still cost one load each.
+ *
+ * <p>Classes keep their order, and so do the tests within a group. Classes that use priorities or
+ * method dependencies are left alone.</p>
+ */
+public class StateAffinityInterceptor implements IMethodInterceptor {
+    private static final Logger logger = LogManager.getLogger(StateAffinityInterceptor.class);
+    private static final String WEB_HOST = "webHost";
+
+    private Helper helper = new Helper();
+    private final Properties configProps = helper.readConfig();
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        if (!Boolean.parseBoolean(configProps.getProperty("stateAffinityOrdering", "false").trim())) {
+            return methods;
+        }
+        Map<Object, List<IMethodInstance>> sessions = new LinkedHashMap<>();
+        for (IMethodInstance method : methods) {
+            Object session = method.getInstance() != null ? method.getInstance() : method.getMethod().getRealClass();
+            sessions.computeIfAbsent(session, key -> new ArrayList<>()).add(method);
+        }
+        List<IMethodInstance> ordered = new ArrayList<>(methods.size());
+        for (List<IMethodInstance> session : sessions.values()) {
+            ordered.addAll(order(session));
+        }
+        return ordered;
+    }
+
+    private static List<IMethodInstance> order(List<IMethodInstance> session) {
+        String className = session.get(0).getMethod().getRealClass().getSimpleName();
+        for (IMethodInstance method : session) {
+            ITestNGMethod testMethod = method.getMethod();
+            if (testMethod.getPriority() != 0 || testMethod.getMethodsDependedUpon().length > 0
+                    || testMethod.getGroupsDependedUpon().length > 0) {
+                logger.debug("Keeping the order of {}: it uses priorities or dependencies", className);
+                return session;
+            }
+        }
+        Map<String, List<IMethodInstance>> starts = new LinkedHashMap<>();
+        for (IMethodInstance method : session) {
+            starts.computeIfAbsent(startKey(method), key -> new ArrayList<>()).add(method);
+        }
+        List<IMethodInstance> ordered = new ArrayList<>(session.size());
+        starts.values().forEach(ordered::addAll);
+        logger.info("Grouped {} tests of {} by start: {} start changes instead of {}",
+                session.size(), className, starts.size(), transitions(session));
+        return ordered;
+    }
+
+    /** Number of times the start changes from one test to the next, counting the first test. */
+    private static int transitions(List<IMethodInstance> session) {
+        int count = 0;
+        String previous = null;
+        for (IMethodInstance method : session) {
+            String key = startKey(method);
+            if (!key.equals(previous)) {
+                count++;
+            }
+            previous = key;
+        }
+        return count;
+    }
+
+    private static String startKey(IMethodInstance method) {
+        StartsOn start = Navigator.startOf(method.getMethod().getConstructorOrMethod().getMethod());
+        if (start == null) {
+            return WEB_HOST;
+        }
+        return start.state().isEmpty() ? start.value().getName() : start.value().getName() + "#" + start.state();
+    }
+}
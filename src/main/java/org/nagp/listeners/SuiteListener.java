@@ -0,0 +1,120 @@
+package org.nagp.listeners;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.dataProvider.Constants;
+import org.nagp.framework.BrowserStateSnapshot;
+import org.nagp.framework.Helper;
+import org.nagp.framework.LocatorCompiler;
+import org.nagp.history.LocatorTimings;
+import org.nagp.metrics.CommandTimings;
+import org.nagp.metrics.FrameworkEvents;
+import org.nagp.metrics.MetricsServer;
+import org.nagp.metrics.SuiteMetrics;
+import org.nagp.metrics.WaitAttribution;
+import org.nagp.network.BackendMocks;
+import org.nagp.network.CachingProxy;
+import org.nagp.network.NetworkArchive;
+import org.nagp.network.ProxyCache;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ITestContext;
+import org.testng.xml.XmlSuite;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/** Suite level hooks: persists what the framework learned during the run.
+ *
+ * <p>It is also the last method interceptor: registered after the ordering interceptors, it sees
+ * the tests that will actually run and queues them in the {@link SuiteMetrics}.</p>
+ */
+public class SuiteListener implements ISuiteListener, IMethodInterceptor {
+    private static final Logger logger = LogManager.getLogger(SuiteListener.class);
+    private final Path resultsFolder = Paths.get(Constants.UPLOAD_PATH, "CurrentTestResults");
+    private MetricsServer metricsServer;
+
+    @Override
+    public void onStart(ISuite suite) {
+        XmlSuite xmlSuite = suite.getXmlSuite();
+        int threads = xmlSuite.getParallel() == null || !xmlSuite.getParallel().isParallel()
+                ? 1 : xmlSuite.getThreadCount();
+        SuiteMetrics.getInstance().suiteStarted(threads);
+        BrowserStateSnapshot.clear();
+        int metricsPort = Integer.parseInt(new Helper().readConfig().getProperty("metricsPort", "0").trim());
+        if (metricsPort > 0) {
+            metricsServer = MetricsServer.start(metricsPort);
+        }
+    }
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        SuiteMetrics.getInstance().testsPlanned(methods.size());
+        return methods;
+    }
+
+    @Override
+    public void onFinish(ISuite suite) {
+        LocatorTimings timings = LocatorTimings.getInstance();
+        List<String> drifting = timings.driftingLocators();
+        for (String drift : drifting) {
+            logger.warn("Locator timing drift: {}", drift);
+        }
+        if (!drifting.isEmpty()) {
+            writeReport("locator-drift.txt", drifting);
+        }
+        timings.save();
+        List<String> lookups = LocatorCompiler.lookupReport();
+        if (!lookups.isEmpty()) {
+            writeReport("locator-lookups.txt", lookups);
+        }
+        List<String> commands = CommandTimings.getInstance().report();
+        if (!commands.isEmpty()) {
+            writeReport("command-timings.tsv", commands);
+        }
+        List<String> waits = WaitAttribution.getInstance().report();
+        if (!waits.isEmpty()) {
+            writeReport("wait-attribution.txt", waits);
+        }
+        List<String> network = NetworkArchive.getInstance().report();
+        if (!network.isEmpty()) {
+            writeReport("network-archive.txt", network);
+        }
+        BackendMocks.captured().forEach((fixture, lines) -> writeReport(fixture + ".mocks.xml", lines));
+        ProxyCache proxyCache = CachingProxy.getCache();
+        if (proxyCache != null && !proxyCache.report().isEmpty()) {
+            writeReport("proxy-cache.txt", proxyCache.report());
+        }
+        FailFastInterceptor.recordGreenRun(suite);
+        List<String> timeBudget = TimeBudgetInterceptor.report();
+        if (!timeBudget.isEmpty()) {
+            writeReport("time-budget.txt", timeBudget);
+        }
+        List<String> schedule = DurationBalancingInterceptor.report(suite);
+        if (!schedule.isEmpty()) {
+            writeReport("schedule-balance.txt", schedule);
+        }
+        if (metricsServer != null) {
+            metricsServer.stop();
+            metricsServer = null;
+        }
+    }
+
+    private void writeReport(String fileName, List<String> lines) {
+        FrameworkEvents.ReportWrite event = FrameworkEvents.beginReportWrite(fileName);
+        try {
+            Files.createDirectories(resultsFolder);
+            Files.write(resultsFolder.resolve(fileName), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Unable to write {}", fileName, e);
+        } finally {
+            FrameworkEvents.end(event);
+        }
+    }
+}
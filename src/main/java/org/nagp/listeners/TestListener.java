@@ -1,106 +1,239 @@
 package org.nagp.listeners;
 
+import com.aventstack.extentreports.ExtentTest;
 import com.aventstack.extentreports.MediaEntityBuilder;
 import com.aventstack.extentreports.Status;
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
 import org.nagp.dataProvider.Constants;
+import org.nagp.framework.Helper;
+import org.nagp.framework.TestDeadline;
+import org.nagp.framework.TestDriver;
+import org.nagp.history.ResultsHistory;
+import org.nagp.history.TestRunRecord;
+import org.nagp.metrics.FrameworkEvents;
+import org.nagp.metrics.SuiteMetrics;
+import org.nagp.metrics.TraceTimeline;
+import org.nagp.metrics.WaitAttribution;
 import org.nagp.reports.ReportManager;
 import org.nagp.reports.ReportTestManager;
-import org.nagp.utils.FileHelper;
+import org.nagp.utils.ResultsArchiver;
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
+import org.testng.IConfigurationListener;
 import org.testng.ITestContext;
 import org.testng.ITestListener;
+import org.testng.ITestNGMethod;
 import org.testng.ITestResult;
 
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class TestListener implements ITestListener {
+public class TestListener implements ITestListener, IConfigurationListener {
 
     private static final Logger logger = LogManager.getLogger(TestListener.class);
     WebDriver driver;
     String filePath = Constants.UPLOAD_PATH + "CurrentTestResults" + File.separator;
+    /** ThreadContext key routing log messages to the running test's log file, see log4j2.xml. */
+    public static final String TEST_ID = "testId";
+    /** Result attribute marking tests counted as started in the {@link SuiteMetrics}. */
+    private static final String STARTED = "nagp.started";
+    private static final File testLogFolder = new File(Constants.UPLOAD_PATH + "CurrentTestResults", "logs");
 
     String targetFileName=null;
+    private final Map<String, Integer> retriesByTest = new ConcurrentHashMap<>();
+    /** Test started on this thread, from its first @BeforeMethod or else from onTestStart. */
+    private static final ThreadLocal<String> startedTest = new ThreadLocal<>();
+    /** When the first @BeforeMethod of the test on this thread started, to record its setup time. */
+    private static final ThreadLocal<Long> setupStart = new ThreadLocal<>();
+    /** Per-test time budget in seconds, 0 when disabled. */
+    private final long testTimeBudget = Long.parseLong(
+            new Helper().readConfig().getProperty("testTimeBudget", "0").trim());
 
 
     private static String getTestMethodName(ITestResult iTestResult) {
         return iTestResult.getMethod().getConstructorOrMethod().getName();
     }
 
+    /** Id used for the test in the results history, e.g. org.nagp.tests.HomePageTests.verifyX */
+    public static String getTestId(ITestResult iTestResult) {
+        return getTestId(iTestResult.getMethod());
+    }
+
+    private static String getTestId(ITestNGMethod method) {
+        return method.getRealClass().getName() + "." + method.getConstructorOrMethod().getName();
+    }
+
+    /** TestNG runs @BeforeMethod before onTestStart; start the test there so its setup is traced and
+     * logged with it. */
+    @Override
+    public void beforeConfiguration(ITestResult configResult, ITestNGMethod testMethod) {
+        if (testMethod != null && configResult.getMethod().isBeforeMethodConfiguration()) {
+            String testId = getTestId(testMethod);
+            if (!testId.equals(startedTest.get())) {
+                setupStart.set(System.currentTimeMillis());
+            }
+            startTest(testId);
+        }
+    }
+
+    private void startTest(String testId) {
+        if (!testId.equals(startedTest.get())) {
+            startedTest.set(testId);
+            ThreadContext.put(TEST_ID, testId);
+            TraceTimeline.startTest(testId);
+        }
+    }
+
+    /** Ends the per-test state: writes the trace and links the test's log file to its report node. */
+    private void finishTest() {
+        startedTest.remove();
+        setupStart.remove();
+        TraceTimeline.finishTest();
+        String testId = ThreadContext.get(TEST_ID);
+        if (testId != null) {
+            ExtentTest test = ReportTestManager.getTest();
+            if (test != null) {
+                File testLog = new File(testLogFolder, testId + ".log");
+                test.info("Test log: <a href='" + testLog.toURI() + "'>" + testLog.getName() + "</a>");
+            }
+            ThreadContext.remove(TEST_ID);
+        }
+    }
+
+    private void recordHistory(ITestResult result, String outcome) {
+        Integer retries = retriesByTest.remove(getTestId(result));
+        ResultsHistory history = ResultsHistory.getInstance();
+        WaitAttribution waits = WaitAttribution.getInstance();
+        history.record(new TestRunRecord(history.getRunId(), result.getStartMillis(), getTestId(result), outcome,
+                result.getEndMillis() - result.getStartMillis(), retries == null ? 0 : retries,
+                TestDriver.takeSessionLaunchMillis(), waits.threadWaitMillis(), setupMillis(result)));
+        waits.recordTest(getTestId(result), result.getEndMillis() - result.getStartMillis(), waits.threadWaitMillis());
+    }
+
+    /** Time from the test's first @BeforeMethod to the start of the test method, 0 without one. */
+    private static long setupMillis(ITestResult result) {
+        Long start = setupStart.get();
+        return start == null ? 0 : Math.max(0, result.getStartMillis() - start);
+    }
+
     @Override
     public void onTestFailure(ITestResult result) {
-        logger.info("***** Error " + result.getName() + " test has failed *****");
-        ITestContext context = result.getTestContext();
-        driver = (WebDriver) result.getAttribute("webDriver");
-        String testClassName = result.getInstanceName().trim();
-        String testMethodName = result.getName().toString().trim();
-        String errDesc = result.getThrowable().toString().split("expected")[0].split(":")[1].replaceAll(" ", "_");
-        takeScreenShot(testMethodName, errDesc, driver);
-        File image = new File(targetFileName);
-        String absolutePath= image.getAbsolutePath();
-        ReportTestManager.getTest().log(Status.FAIL, result.getThrowable());
-        ReportTestManager.getTest().fail("Screenshot",
-                MediaEntityBuilder.createScreenCaptureFromPath(absolutePath).build());
+        try (TraceTimeline.Span ignored = TraceTimeline.span("listener", "onTestFailure")) {
+            logger.info("***** Error " + result.getName() + " test has failed *****");
+            SuiteMetrics.getInstance().testFailed();
+            recordHistory(result, "FAIL");
+            TestDeadline deadline = TestDeadline.current();
+            if (deadline != null) {
+                logger.info("Time budget of " + result.getName() + " - " + deadline.breakdown());
+                TestDeadline.clear();
+            }
+            ITestContext context = result.getTestContext();
+            driver = (WebDriver) result.getAttribute("webDriver");
+            String testClassName = result.getInstanceName().trim();
+            String testMethodName = result.getName().toString().trim();
+            String errDesc = result.getThrowable().toString().split("expected")[0].split(":")[1].replaceAll(" ", "_");
+            takeScreenShot(testMethodName, errDesc, driver);
+            File image = new File(targetFileName);
+            String absolutePath= image.getAbsolutePath();
+            try (TraceTimeline.Span report = TraceTimeline.span("report", "log failure")) {
+                ReportTestManager.getTest().log(Status.FAIL, result.getThrowable());
+                ReportTestManager.getTest().fail("Screenshot",
+                        MediaEntityBuilder.createScreenCaptureFromPath(absolutePath).build());
+            }
+        } finally {
+            finishTest();
+        }
     }
 
     public void takeScreenShot(String methodName, String errDesc, WebDriver driver) {
-        File scrFile = ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
-        try {
+        try (TraceTimeline.Span ignored = TraceTimeline.span("screenshot", "takeScreenShot", methodName)) {
+            File scrFile = ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
             DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyymmddhhmmss");
             LocalDateTime now = LocalDateTime.now();
             targetFileName=filePath + methodName + errDesc + dtf.format(now)+".png";
             FileUtils.copyFile(scrFile, new File(targetFileName));
-            System.out.println("***Placed screen shot in " + filePath + " ***");
+            logger.info("Placed screen shot in " + targetFileName);
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("Unable to save the screen shot of " + methodName, e);
         }
     }
 
     public void onFinish(ITestContext context) {
-        System.out.println(("*** Test Suite " + context.getName() + " ending ***"));
+        logger.info("*** Test Suite " + context.getName() + " ending ***");
+        FrameworkEvents.ReportWrite event = FrameworkEvents.beginReportWrite("extent report");
         ReportManager.getInstance().flush();
+        FrameworkEvents.end(event);
     }
 
     public void onTestStart(ITestResult iTestResult) {
-        System.out.println(iTestResult.getTestName());
-        String description = iTestResult.getMethod().getDescription();
-        if (iTestResult.getTestName() != null) {
-            ReportTestManager.startTest(iTestResult.getTestName(),
-                    iTestResult.getInstance().getClass().getCanonicalName());
-        }else if (description != null)
-            ReportTestManager.startTest(iTestResult.getMethod().getMethodName() + "( " + description + ")",
-                    iTestResult.getInstance().getClass().getCanonicalName());
-        else {
-            ReportTestManager.startTest(iTestResult.getMethod().getMethodName(),
-                    iTestResult.getInstance().getClass().getCanonicalName());
+        startTest(getTestId(iTestResult));
+        try (TraceTimeline.Span ignored = TraceTimeline.span("listener", "onTestStart")) {
+            logger.info("Starting test " + getTestId(iTestResult));
+            SuiteMetrics.getInstance().testStarted();
+            iTestResult.setAttribute(STARTED, Boolean.TRUE);
+            WaitAttribution.getInstance().resetThread();
+            TestDeadline.start(getTestId(iTestResult), testTimeBudget);
+            String description = iTestResult.getMethod().getDescription();
+            if (iTestResult.getTestName() != null) {
+                ReportTestManager.startTest(iTestResult.getTestName(),
+                        iTestResult.getInstance().getClass().getCanonicalName());
+            }else if (description != null)
+                ReportTestManager.startTest(iTestResult.getMethod().getMethodName() + "( " + description + ")",
+                        iTestResult.getInstance().getClass().getCanonicalName());
+            else {
+                ReportTestManager.startTest(iTestResult.getMethod().getMethodName(),
+                        iTestResult.getInstance().getClass().getCanonicalName());
+            }
         }
     }
 
     public void onTestSuccess(ITestResult result) {
-        ReportTestManager.getTest().log(Status.PASS, "Test passed");
+        try (TraceTimeline.Span ignored = TraceTimeline.span("listener", "onTestSuccess")) {
+            try (TraceTimeline.Span report = TraceTimeline.span("report", "log pass")) {
+                ReportTestManager.getTest().log(Status.PASS, "Test passed");
+            }
+            recordHistory(result, "PASS");
+            SuiteMetrics.getInstance().testPassed();
+            TestDeadline.clear();
+        } finally {
+            finishTest();
+        }
     }
 
     public void onTestSkipped(ITestResult result) {
-        ReportTestManager.getTest().log(Status.SKIP, "Test Skipped");
+        try (TraceTimeline.Span ignored = TraceTimeline.span("listener", "onTestSkipped")) {
+            try (TraceTimeline.Span report = TraceTimeline.span("report", "log skip")) {
+                ReportTestManager.getTest().log(Status.SKIP, "Test Skipped");
+            }
+            if (result.wasRetried()) {
+                retriesByTest.merge(getTestId(result), 1, Integer::sum);
+            } else {
+                recordHistory(result, "SKIP");
+            }
+            SuiteMetrics.getInstance().testSkipped(result.wasRetried(), result.getAttribute(STARTED) != null);
+            TestDeadline.clear();
+        } finally {
+            finishTest();
+        }
     }
 
     public void onTestFailedButWithinSuccessPercentage(ITestResult result) {
-        System.out.println("Test failed but it is in defined success ratio " + getTestMethodName(result));
+        logger.info("Test failed but it is in defined success ratio " + getTestMethodName(result));
     }
 
 
     @Override
     public void onStart(ITestContext context) {
         ITestListener.super.onStart(context);
-        FileHelper fileHelper= new FileHelper();
-        fileHelper.moveFiles();
-        System.out.println("Moving files from Current Test Results to Archived Test Results");
+        new ResultsArchiver().archiveCurrentResults();
+        logger.info("Archiving files from Current Test Results to Archived Test Results");
     }
 }
@@ -0,0 +1,248 @@
+package org.nagp.listeners;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.framework.Helper;
+import org.nagp.history.ResultsHistory;
+import org.nagp.history.TestRunRecord;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Properties;
+
+/**
+ * Runs only the tests that fit a time budget, for pipelines that give the UI stage a hard limit.
+ *
+ * <p>With {@code timeBudgetSeconds} above 0, each test is predicted from its median duration in the
+ * {@link ResultsHistory}, including its {@code @BeforeMethod} setup, and valued by its most
+ * valuable group ({@code timeBudgetGroupValues}), a bonus that halves with every run since it last
+ * failed, and up to one more for the days since it last ran (a full point after a week or for a
+ * test that never ran). The tests with the highest total value whose predicted work fits the budget
+ * times the thread count, less one session launch per class, are chosen by a 0/1 knapsack over
+ * whole seconds. Since the tests of a class run on one thread, the least valuable test per second
+ * of the busiest thread is then dropped until the classes also fit the budget when scheduled
+ * longest first. Skipped tests and the reason are written to time-budget.txt.</p>
+ */
+public class TimeBudgetInterceptor implements IMethodInterceptor {
+    private static final Logger logger = LogManager.getLogger(TimeBudgetInterceptor.class);
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final List<String> report = Collections.synchronizedList(new ArrayList<>());
+
+    private Helper helper = new Helper();
+    private final Properties configProps = helper.readConfig();
+
+    /** A test with its predicted duration in seconds and its value. */
+    private static final class Candidate {
+        final IMethodInstance method;
+        final String testId;
+        final Object session;
+        final int seconds;
+        final double value;
+        String skipReason;
+
+        Candidate(IMethodInstance method, String testId, Object session, int seconds, double value) {
+            this.method = method;
+            this.testId = testId;
+            this.session = session;
+            this.seconds = seconds;
+            this.value = value;
+        }
+    }
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        long budgetSeconds = Long.parseLong(configProps.getProperty("timeBudgetSeconds", "0").trim());
+        if (budgetSeconds <= 0 || methods.isEmpty()) {
+            return methods;
+        }
+        ResultsHistory history = ResultsHistory.getInstance();
+        Map<String, Double> groupValues = groupValues(configProps.getProperty("timeBudgetGroupValues", ""));
+        List<Candidate> candidates = new ArrayList<>();
+        Map<String, Long> known = new HashMap<>();
+        for (IMethodInstance method : methods) {
+            String testId = method.getMethod().getRealClass().getName() + "."
+                    + method.getMethod().getConstructorOrMethod().getName();
+            OptionalLong median = history.percentile(testId, TestRunRecord::getElapsedMillis, 50);
+            if (median.isPresent()) {
+                known.put(testId, median.getAsLong());
+            }
+        }
+        long unknownMillis = known.isEmpty()
+                ? Long.parseLong(configProps.getProperty("timeBudgetDefaultTestSeconds", "30").trim()) * 1000
+                : known.values().stream().mapToLong(Long::longValue).sum() / known.size();
+        for (IMethodInstance method : methods) {
+            String testId = method.getMethod().getRealClass().getName() + "."
+                    + method.getMethod().getConstructorOrMethod().getName();
+            int seconds = (int) Math.max(1, (known.getOrDefault(testId, unknownMillis) + 999) / 1000);
+            Object session = method.getInstance() != null ? method.getInstance() : method.getMethod().getRealClass();
+            candidates.add(new Candidate(method, testId, session,
+                    seconds, value(history, testId, method.getMethod().getGroups(), groupValues)));
+        }
+
+        int workers = workers(context);
+        long launchSeconds = (history.percentileOverAll(TestRunRecord::getSessionLaunchMillis, 50).orElse(0) + 999) / 1000;
+        long sessions = candidates.stream().map(candidate -> candidate.session).distinct().count();
+        int capacity = (int) Math.max(0, budgetSeconds * workers - launchSeconds * sessions);
+        knapsack(candidates, capacity);
+        fitThreads(candidates, workers, budgetSeconds, launchSeconds);
+
+        List<IMethodInstance> selected = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        double selectedValue = 0;
+        double totalValue = 0;
+        long selectedSeconds = 0;
+        for (Candidate candidate : candidates) {
+            totalValue += candidate.value;
+            if (candidate.skipReason == null) {
+                selected.add(candidate.method);
+                selectedValue += candidate.value;
+                selectedSeconds += candidate.seconds;
+            } else {
+                lines.add(String.format(Locale.ROOT, "  skipped %-70s value %5.2f  predicted %5d s  %s",
+                        candidate.testId, candidate.value, candidate.seconds, candidate.skipReason));
+            }
+        }
+        lines.add(0, String.format(Locale.ROOT, "%s: budget %d s on %d threads, selected %d of %d tests "
+                        + "(%d s of work, value %.2f of %.2f)", context.getName(), budgetSeconds, workers,
+                selected.size(), candidates.size(), selectedSeconds, selectedValue, totalValue));
+        lines.forEach(logger::info);
+        report.addAll(lines);
+        return selected;
+    }
+
+    /** @return what the time budget skipped in this suite and why; empty if it was off */
+    public static List<String> report() {
+        synchronized (report) {
+            List<String> lines = new ArrayList<>(report);
+            report.clear();
+            return lines;
+        }
+    }
+
+    private static double value(ResultsHistory history, String testId, String[] groups, Map<String, Double> groupValues) {
+        double groupValue = groups.length == 0 ? 1 : 0;
+        for (String group : groups) {
+            groupValue = Math.max(groupValue, groupValues.getOrDefault(group, 1.0));
+        }
+        List<TestRunRecord> records = history.recordsFor(testId);
+        double failureBonus = 0;
+        for (int runsSince = 0; runsSince < records.size(); runsSince++) {
+            if (records.get(records.size() - 1 - runsSince).isFailure()) {
+                failureBonus = 2 * Math.pow(0.5, runsSince);
+                break;
+            }
+        }
+        double staleness = records.isEmpty() ? 1 : Math.min(1.0,
+                (System.currentTimeMillis() - records.get(records.size() - 1).getStartedAt()) / (7.0 * DAY_MILLIS));
+        return groupValue + failureBonus + staleness;
+    }
+
+    /** Mark everything outside the most valuable subset that fits the capacity as skipped. */
+    private static void knapsack(List<Candidate> candidates, int capacity) {
+        int n = candidates.size();
+        double[] best = new double[capacity + 1];
+        boolean[][] taken = new boolean[n][capacity + 1];
+        for (int i = 0; i < n; i++) {
+            Candidate candidate = candidates.get(i);
+            for (int c = capacity; c >= candidate.seconds; c--) {
+                double with = best[c - candidate.seconds] + candidate.value;
+                if (with > best[c]) {
+                    best[c] = with;
+                    taken[i][c] = true;
+                }
+            }
+        }
+        int c = capacity;
+        for (int i = n - 1; i >= 0; i--) {
+            Candidate candidate = candidates.get(i);
+            if (taken[i][c]) {
+                c -= candidate.seconds;
+            } else {
+                candidate.skipReason = candidate.seconds > capacity
+                        ? "longer than the whole budget" : "not in the most valuable set that fits the budget";
+            }
+        }
+    }
+
+    /** Drop tests from the busiest thread until the classes, scheduled longest first, fit the budget. */
+    private static void fitThreads(List<Candidate> candidates, int workers, long budgetSeconds, long launchSeconds) {
+        while (true) {
+            Map<Object, List<Candidate>> classes = new LinkedHashMap<>();
+            for (Candidate candidate : candidates) {
+                if (candidate.skipReason == null) {
+                    classes.computeIfAbsent(candidate.session, key -> new ArrayList<>()).add(candidate);
+                }
+            }
+            List<List<Candidate>> longestFirst = new ArrayList<>(classes.values());
+            longestFirst.sort((a, b) -> Long.compare(seconds(b), seconds(a)));
+            long[] loads = new long[workers];
+            List<List<Candidate>> threads = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                threads.add(new ArrayList<>());
+            }
+            for (List<Candidate> tests : longestFirst) {
+                int worker = 0;
+                for (int i = 1; i < workers; i++) {
+                    if (loads[i] < loads[worker]) {
+                        worker = i;
+                    }
+                }
+                loads[worker] += launchSeconds + seconds(tests);
+                threads.get(worker).addAll(tests);
+            }
+            int busiest = 0;
+            for (int i = 1; i < workers; i++) {
+                if (loads[i] > loads[busiest]) {
+                    busiest = i;
+                }
+            }
+            if (loads[busiest] <= budgetSeconds || threads.get(busiest).isEmpty()) {
+                return;
+            }
+            Candidate cheapest = null;
+            for (Candidate candidate : threads.get(busiest)) {
+                if (cheapest == null || candidate.value / candidate.seconds < cheapest.value / cheapest.seconds) {
+                    cheapest = candidate;
+                }
+            }
+            cheapest.skipReason = "its class does not fit the budget on one thread";
+        }
+    }
+
+    private static long seconds(List<Candidate> tests) {
+        return tests.stream().mapToLong(candidate -> candidate.seconds).sum();
+    }
+
+    /** Parse "smoke:3,regression:1". */
+    private static Map<String, Double> groupValues(String config) {
+        Map<String, Double> values = new HashMap<>();
+        for (String entry : config.split(",")) {
+            String[] parts = entry.split(":");
+            if (parts.length == 2) {
+                try {
+                    values.put(parts[0].trim(), Double.parseDouble(parts[1].trim()));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring group value {}", entry);
+                }
+            }
+        }
+        return values;
+    }
+
+    private static int workers(ITestContext context) {
+        XmlTest test = context.getCurrentXmlTest();
+        XmlSuite.ParallelMode parallel = test.getParallel();
+        return parallel == null || !parallel.isParallel() ? 1 : Math.max(1, test.getThreadCount());
+    }
+}
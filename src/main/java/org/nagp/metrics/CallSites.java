@@ -0,0 +1,71 @@
+package org.nagp.metrics;
+
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Names the page object or test code a framework call was made from.
+ *
+ * <p>Listeners run on every WebDriver command, so the stack is walked lazily with a StackWalker
+ * and the walk stops at the first frame that answers the question instead of capturing the whole
+ * stack trace.</p>
+ */
+public final class CallSites {
+    public static final String PAGE_PACKAGE = "org.nagp.pages.";
+    public static final String TEST_PACKAGE = "org.nagp.tests.";
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private CallSites() {
+    }
+
+    /** Nearest frame outside this class whose class name matches.
+     *
+     * @param className test on the fully qualified class name of a frame
+     * @return "SimpleName.method" of the frame, nested classes named after their outer class
+     */
+    public static Optional<String> nearest(Predicate<String> className) {
+        return WALKER.walk(frames -> frames
+                .filter(frame -> !frame.getClassName().equals(CallSites.class.getName())
+                        && className.test(frame.getClassName()))
+                .findFirst()
+                .map(CallSites::describe));
+    }
+
+    /** @return simple name of the nearest page object class on the stack */
+    public static Optional<String> nearestPage() {
+        return WALKER.walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith(PAGE_PACKAGE))
+                .findFirst()
+                .map(frame -> simpleName(frame.getClassName())));
+    }
+
+    /** Outermost page object method on the stack; the walk ends at the first test frame above it.
+     *
+     * @return "SimpleName.method", or null outside page objects
+     */
+    public static String outermostPageMethod() {
+        return WALKER.walk(frames -> {
+            StackWalker.StackFrame page = null;
+            for (StackWalker.StackFrame frame : (Iterable<StackWalker.StackFrame>) frames::iterator) {
+                String className = frame.getClassName();
+                if (className.startsWith(PAGE_PACKAGE)) {
+                    page = frame;
+                } else if (page != null && className.startsWith(TEST_PACKAGE)) {
+                    break;
+                }
+            }
+            return page == null ? null : describe(page);
+        });
+    }
+
+    /** @return class name without package and without the nested class suffix */
+    public static String simpleName(String className) {
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        int nested = simpleName.indexOf('$');
+        return nested < 0 ? simpleName : simpleName.substring(0, nested);
+    }
+
+    private static String describe(StackWalker.StackFrame frame) {
+        return simpleName(frame.getClassName()) + "." + frame.getMethodName();
+    }
+}
@@ -0,0 +1,202 @@
+package org.nagp.metrics;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsElement;
+import org.openqa.selenium.support.events.WebDriverListener;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times every WebDriver command sent through an EventFiringDecorator.
+ *
+ * <p>Latencies go into one {@link LatencyHistogram} per command, locator and page object. The
+ * locator is the By of find calls; element commands inherit the locator their element was found
+ * with. The page object is the nearest calling class in {@value CallSites#PAGE_PACKAGE}, "-" for calls
+ * made directly from tests or the framework. {@link #report()} lists p50/p90/p99 per key for the suite
+ * report.</p>
+ */
+public class CommandTimings implements WebDriverListener {
+    private static final String NONE = "-";
+    private static final String HEADER = "command\tlocator\tpage\tcount\terrors\tp50Ms\tp90Ms\tp99Ms\tmaxMs\ttotalMs";
+    private static CommandTimings instance;
+
+    private final Map<Key, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<WebElement, String> elementLocators =
+            Collections.synchronizedMap(new WeakHashMap<WebElement, String>());
+    private final ThreadLocal<Deque<Call>> calls = new ThreadLocal<Deque<Call>>() {
+        @Override
+        protected Deque<Call> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    public static synchronized CommandTimings getInstance() {
+        if (instance == null) {
+            instance = new CommandTimings();
+        }
+        return instance;
+    }
+
+    @Override
+    public void beforeAnyCall(Object target, Method method, Object[] args) {
+        if (method.getDeclaringClass() == Object.class) {
+            return;
+        }
+        Key key = new Key(method.getName(), locatorOf(target, args), CallSites.nearestPage().orElse(NONE));
+        calls.get().push(new Call(key, System.nanoTime()));
+    }
+
+    @Override
+    public void afterAnyCall(Object target, Method method, Object[] args, Object result) {
+        if (method.getDeclaringClass() == Object.class) {
+            return;
+        }
+        Call call = finish(false);
+        if (call != null && args != null && args.length > 0 && args[0] instanceof By) {
+            rememberLocator(result, call.key.locator);
+        }
+    }
+
+    @Override
+    public void onError(Object target, Method method, Object[] args, InvocationTargetException e) {
+        if (method.getDeclaringClass() != Object.class) {
+            finish(true);
+        }
+    }
+
+    /** @return histograms recorded so far, keyed by command, locator and page */
+    public Map<Key, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /** Tab separated p50/p90/p99 per command, locator and page, slowest total first.
+     *
+     * @return header and one line per key, or an empty list if nothing was recorded
+     */
+    public List<String> report() {
+        List<Map.Entry<Key, LatencyHistogram>> entries = new ArrayList<>(histograms.entrySet());
+        if (entries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        entries.sort((a, b) -> Long.compare(b.getValue().getTotalMicros(), a.getValue().getTotalMicros()));
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        for (Map.Entry<Key, LatencyHistogram> entry : entries) {
+            Key key = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            lines.add(key.command + "\t" + key.locator + "\t" + key.page
+                    + "\t" + histogram.getCount()
+                    + "\t" + histogram.getErrorCount()
+                    + "\t" + millis(histogram.percentileMicros(50))
+                    + "\t" + millis(histogram.percentileMicros(90))
+                    + "\t" + millis(histogram.percentileMicros(99))
+                    + "\t" + millis(histogram.getMaxMicros())
+                    + "\t" + millis(histogram.getTotalMicros()));
+        }
+        return lines;
+    }
+
+    private Call finish(boolean failed) {
+        Deque<Call> stack = calls.get();
+        Call call = stack.poll();
+        if (call != null) {
+            histograms.computeIfAbsent(call.key, k -> new LatencyHistogram())
+                    .record(System.nanoTime() - call.startNanos, failed);
+        }
+        return call;
+    }
+
+    private String locatorOf(Object target, Object[] args) {
+        if (args != null && args.length > 0 && args[0] instanceof By) {
+            return args[0].toString();
+        }
+        if (target instanceof WebElement) {
+            String locator = elementLocators.get(unwrap(target));
+            return locator == null ? NONE : locator;
+        }
+        return NONE;
+    }
+
+    private void rememberLocator(Object result, String locator) {
+        if (result instanceof WebElement) {
+            elementLocators.put(unwrap(result), locator);
+        } else if (result instanceof List) {
+            for (Object element : (List<?>) result) {
+                if (element instanceof WebElement) {
+                    elementLocators.put(unwrap(element), locator);
+                }
+            }
+        }
+    }
+
+    private static WebElement unwrap(Object element) {
+        Object unwrapped = element;
+        while (unwrapped instanceof WrapsElement) {
+            unwrapped = ((WrapsElement) unwrapped).getWrappedElement();
+        }
+        return (WebElement) unwrapped;
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.1f", micros / 1000.0);
+    }
+
+    /** Histogram key: command name, locator and page object. */
+    public static final class Key {
+        private final String command;
+        private final String locator;
+        private final String page;
+
+        Key(String command, String locator, String page) {
+            this.command = command;
+            this.locator = locator;
+            this.page = page;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public String getLocator() {
+            return locator;
+        }
+
+        public String getPage() {
+            return page;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return command.equals(other.command) && locator.equals(other.locator) && page.equals(other.page);
+        }
+
+        @Override
+        public int hashCode() {
+            return (command.hashCode() * 31 + locator.hashCode()) * 31 + page.hashCode();
+        }
+    }
+
+    private static final class Call {
+        private final Key key;
+        private final long startNanos;
+
+        private Call(Key key, long startNanos) {
+            this.key = key;
+            this.startNanos = startNanos;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package org.nagp.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.nagp.framework.Helper;
+
+/**
+ * Java Flight Recorder events for the framework's hot paths, enabled with {@code jfrEvents}.
+ *
+ * <p>Events appear under "NAGP Framework" in JDK Mission Control next to GC and thread events of
+ * the test JVM, e.g. when recording with {@code -XX:StartFlightRecording}. Each {@code begin...}
+ * method returns null when the switch is off, and every {@code end...} method accepts null, so
+ * call sites need no checks of their own. Without an active recording the events are not
+ * committed by JFR either.</p>
+ */
+public final class FrameworkEvents {
+    private static final boolean ENABLED = Boolean.parseBoolean(
+            new Helper().readConfig().getProperty("jfrEvents", "false").trim());
+
+    private FrameworkEvents() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Name("org.nagp.SessionLaunch")
+    @Label("Browser Session Launch")
+    @Category({"NAGP Framework", "Driver"})
+    @StackTrace(false)
+    public static class SessionLaunch extends Event {
+        @Label("Browser")
+        String browser;
+
+        @Label("Launched")
+        boolean launched;
+    }
+
+    @Name("org.nagp.Wait")
+    @Label("Wait")
+    @Category({"NAGP Framework", "Waits"})
+    @Description("Explicit wait, sleep or in-page wait")
+    @StackTrace(false)
+    public static class Wait extends Event {
+        @Label("Description")
+        String description;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("org.nagp.Lookup")
+    @Label("Element Lookup")
+    @Category({"NAGP Framework", "Lookups"})
+    @StackTrace(false)
+    public static class Lookup extends Event {
+        @Label("Locator")
+        String locator;
+
+        @Label("Strategy")
+        String strategy;
+
+        @Label("Elements Found")
+        int found;
+    }
+
+    @Name("org.nagp.Retry")
+    @Label("Retry Attempt")
+    @Category({"NAGP Framework", "Lookups"})
+    public static class Retry extends Event {
+        @Label("Step")
+        String step;
+
+        @Label("Attempt")
+        int attempt;
+    }
+
+    @Name("org.nagp.XmlParse")
+    @Label("XML Parse")
+    @Category({"NAGP Framework", "Test Data"})
+    @StackTrace(false)
+    public static class XmlParse extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Tag")
+        String tag;
+    }
+
+    @Name("org.nagp.ExcelRead")
+    @Label("Excel Read")
+    @Category({"NAGP Framework", "Test Data"})
+    @StackTrace(false)
+    public static class ExcelRead extends Event {
+        @Label("File")
+        String file;
+    }
+
+    @Name("org.nagp.ReportWrite")
+    @Label("Report Write")
+    @Category({"NAGP Framework", "Reports"})
+    @StackTrace(false)
+    public static class ReportWrite extends Event {
+        @Label("Report")
+        String report;
+    }
+
+    public static SessionLaunch beginSessionLaunch(String browser) {
+        if (!ENABLED) {
+            return null;
+        }
+        SessionLaunch event = new SessionLaunch();
+        event.browser = browser;
+        event.begin();
+        return event;
+    }
+
+    public static void endSessionLaunch(SessionLaunch event, boolean launched) {
+        if (event != null) {
+            event.launched = launched;
+            event.commit();
+        }
+    }
+
+    public static Wait beginWait(String description) {
+        if (!ENABLED) {
+            return null;
+        }
+        Wait event = new Wait();
+        event.description = description;
+        event.begin();
+        return event;
+    }
+
+    public static void endWait(Wait event, WaitAttribution.Outcome outcome) {
+        if (event != null) {
+            event.outcome = outcome.name();
+            event.commit();
+        }
+    }
+
+    public static Lookup beginLookup(String locator, String strategy) {
+        if (!ENABLED) {
+            return null;
+        }
+        Lookup event = new Lookup();
+        event.locator = locator;
+        event.strategy = strategy;
+        event.begin();
+        return event;
+    }
+
+    public static void endLookup(Lookup event, int found) {
+        if (event != null) {
+            event.found = found;
+            event.commit();
+        }
+    }
+
+    /** Record a retry attempt as an instant event; the stack trace shows who retried. The first
+     * attempt is not a retry and records nothing.
+     *
+     * @param step what is retried, e.g. the method and locator
+     * @param attempt number of attempts made before this one
+     */
+    public static void retry(String step, int attempt) {
+        if (ENABLED && attempt > 0) {
+            Retry event = new Retry();
+            event.step = step;
+            event.attempt = attempt;
+            event.commit();
+        }
+    }
+
+    public static XmlParse beginXmlParse(String file, String tag) {
+        if (!ENABLED) {
+            return null;
+        }
+        XmlParse event = new XmlParse();
+        event.file = file;
+        event.tag = tag;
+        event.begin();
+        return event;
+    }
+
+    public static ExcelRead beginExcelRead(String file) {
+        if (!ENABLED) {
+            return null;
+        }
+        ExcelRead event = new ExcelRead();
+        event.file = file;
+        event.begin();
+        return event;
+    }
+
+    public static ReportWrite beginReportWrite(String report) {
+        if (!ENABLED) {
+            return null;
+        }
+        ReportWrite event = new ReportWrite();
+        event.report = report;
+        event.begin();
+        return event;
+    }
+
+    /** Commit an event that has no result fields, e.g. an XML parse, Excel read or report write.
+     *
+     * @param event event returned by a begin method, may be null
+     */
+    public static void end(Event event) {
+        if (event != null) {
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.nagp.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.network.CachingProxy;
+import org.nagp.network.ProxyCache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Prometheus text endpoint on localhost that shows the suite while it runs.
+ *
+ * <p>Started by the suite listener when {@code metricsPort} is greater than 0 and stopped when the
+ * suite finishes. {@code GET /metrics} returns test counters, queued tests, browser session use,
+ * WebDriver command latency histograms per command, wait totals per outcome and caching proxy
+ * hits, e.g. {@code curl localhost:9464/metrics}.</p>
+ */
+public class MetricsServer {
+    private static final Logger logger = LogManager.getLogger(MetricsServer.class);
+    /** Bucket bounds of the exported command latency histograms, in seconds. */
+    private static final double[] LATENCY_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private MetricsServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /** Start serving /metrics on the loopback interface.
+     *
+     * @param port port to listen on
+     * @return the running server, or null if it could not be started
+     */
+    public static MetricsServer start(int port) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+            server.createContext("/metrics", MetricsServer::serve);
+            server.setExecutor(executor);
+            server.start();
+            logger.info("Serving live metrics on http://{}:{}/metrics", server.getAddress().getHostString(), port);
+            return new MetricsServer(server, executor);
+        } catch (IOException e) {
+            logger.warn("Unable to start the metrics server on port {}", port, e);
+            return null;
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static void serve(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** @return all metrics in the Prometheus text exposition format */
+    static String render() {
+        StringBuilder out = new StringBuilder();
+        SuiteMetrics suite = SuiteMetrics.getInstance();
+        gauge(out, "nagp_tests_running", "Tests currently running", suite.getTestsRunning());
+        gauge(out, "nagp_tests_queued", "Tests waiting to run", suite.getTestsQueued());
+        out.append("# HELP nagp_tests_total Finished tests by result\n# TYPE nagp_tests_total counter\n");
+        out.append("nagp_tests_total{result=\"passed\"} ").append(suite.getTestsPassed()).append('\n');
+        out.append("nagp_tests_total{result=\"failed\"} ").append(suite.getTestsFailed()).append('\n');
+        out.append("nagp_tests_total{result=\"skipped\"} ").append(suite.getTestsSkipped()).append('\n');
+        out.append("nagp_tests_total{result=\"retried\"} ").append(suite.getTestsRetried()).append('\n');
+        gauge(out, "nagp_sessions_active", "Open browser sessions", suite.getSessionsActive());
+        gauge(out, "nagp_sessions_capacity", "Browser sessions that can run at once", suite.getSessionCapacity());
+        gauge(out, "nagp_sessions_utilization", "Open sessions divided by capacity",
+                (double) suite.getSessionsActive() / suite.getSessionCapacity());
+        out.append("# HELP nagp_sessions_launched_total Browser sessions launched\n"
+                + "# TYPE nagp_sessions_launched_total counter\n");
+        out.append("nagp_sessions_launched_total ").append(suite.getSessionsLaunched()).append('\n');
+        renderCommandLatency(out);
+        renderWaits(out);
+        ProxyCache proxyCache = CachingProxy.getCache();
+        if (proxyCache != null) {
+            out.append("# HELP nagp_proxy_requests_total Requests through the caching proxy by result\n"
+                    + "# TYPE nagp_proxy_requests_total counter\n");
+            out.append("nagp_proxy_requests_total{result=\"hit\"} ").append(proxyCache.getHits()).append('\n');
+            out.append("nagp_proxy_requests_total{result=\"miss\"} ").append(proxyCache.getMisses()).append('\n');
+            out.append("# HELP nagp_proxy_bytes_saved_total Bytes served from the proxy cache\n"
+                    + "# TYPE nagp_proxy_bytes_saved_total counter\n");
+            out.append("nagp_proxy_bytes_saved_total ").append(proxyCache.getBytesSaved()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void renderCommandLatency(StringBuilder out) {
+        Map<String, long[]> buckets = new TreeMap<>();
+        Map<String, long[]> sums = new TreeMap<>();
+        for (Map.Entry<CommandTimings.Key, LatencyHistogram> entry
+                : CommandTimings.getInstance().getHistograms().entrySet()) {
+            String command = entry.getKey().getCommand();
+            LatencyHistogram histogram = entry.getValue();
+            long[] counts = buckets.computeIfAbsent(command, k -> new long[LATENCY_BUCKETS.length]);
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                counts[i] += histogram.countAtOrBelow((long) (LATENCY_BUCKETS[i] * 1_000_000));
+            }
+            long[] sum = sums.computeIfAbsent(command, k -> new long[3]);
+            sum[0] += histogram.getCount();
+            sum[1] += histogram.getTotalMicros();
+            sum[2] += histogram.getErrorCount();
+        }
+        out.append("# HELP nagp_webdriver_command_seconds WebDriver command latency\n"
+                + "# TYPE nagp_webdriver_command_seconds histogram\n");
+        for (Map.Entry<String, long[]> entry : buckets.entrySet()) {
+            String command = entry.getKey();
+            long[] sum = sums.get(command);
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                out.append("nagp_webdriver_command_seconds_bucket{command=\"").append(command)
+                        .append("\",le=\"").append(LATENCY_BUCKETS[i]).append("\"} ").append(entry.getValue()[i])
+                        .append('\n');
+            }
+            out.append("nagp_webdriver_command_seconds_bucket{command=\"").append(command).append("\",le=\"+Inf\"} ")
+                    .append(sum[0]).append('\n');
+            out.append("nagp_webdriver_command_seconds_sum{command=\"").append(command).append("\"} ")
+                    .append(sum[1] / 1e6).append('\n');
+            out.append("nagp_webdriver_command_seconds_count{command=\"").append(command).append("\"} ")
+                    .append(sum[0]).append('\n');
+        }
+        out.append("# HELP nagp_webdriver_command_errors_total WebDriver commands that threw\n"
+                + "# TYPE nagp_webdriver_command_errors_total counter\n");
+        for (Map.Entry<String, long[]> entry : sums.entrySet()) {
+            out.append("nagp_webdriver_command_errors_total{command=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue()[2]).append('\n');
+        }
+    }
+
+    private static void renderWaits(StringBuilder out) {
+        WaitAttribution waits = WaitAttribution.getInstance();
+        out.append("# HELP nagp_waits_total Finished waits by outcome\n# TYPE nagp_waits_total counter\n");
+        for (WaitAttribution.Outcome outcome : WaitAttribution.Outcome.values()) {
+            out.append("nagp_waits_total{outcome=\"").append(outcome.name().toLowerCase()).append("\"} ")
+                    .append(waits.waitCount(outcome)).append('\n');
+        }
+        out.append("# HELP nagp_wait_seconds_total Time spent in waits by outcome\n"
+                + "# TYPE nagp_wait_seconds_total counter\n");
+        for (WaitAttribution.Outcome outcome : WaitAttribution.Outcome.values()) {
+            out.append("nagp_wait_seconds_total{outcome=\"").append(outcome.name().toLowerCase()).append("\"} ")
+                    .append(waits.waitNanos(outcome) / 1e9).append('\n');
+        }
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,127 @@
+package org.nagp.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of the running suite: test outcomes, queued tests and browser sessions.
+ *
+ * <p>Updated by the test and suite listeners and by TestDriver, read by {@link MetricsServer}.</p>
+ */
+public class SuiteMetrics {
+    private static SuiteMetrics instance;
+
+    private final AtomicInteger testsRunning = new AtomicInteger();
+    private final AtomicInteger testsQueued = new AtomicInteger();
+    private final LongAdder testsPassed = new LongAdder();
+    private final LongAdder testsFailed = new LongAdder();
+    private final LongAdder testsSkipped = new LongAdder();
+    private final LongAdder testsRetried = new LongAdder();
+    private final AtomicInteger sessionsActive = new AtomicInteger();
+    private final LongAdder sessionsLaunched = new LongAdder();
+    private volatile int sessionCapacity = 1;
+
+    public static synchronized SuiteMetrics getInstance() {
+        if (instance == null) {
+            instance = new SuiteMetrics();
+        }
+        return instance;
+    }
+
+    /** Called when the suite starts, before its tests are planned.
+     *
+     * @param sessionCapacity number of browser sessions that can run at once, i.e. the thread count
+     */
+    public void suiteStarted(int sessionCapacity) {
+        testsQueued.set(0);
+        this.sessionCapacity = Math.max(1, sessionCapacity);
+    }
+
+    /** Queue the tests of a {@code <test>} once the method interceptors have chosen them.
+     *
+     * @param plannedTests number of test methods that will run
+     */
+    public void testsPlanned(int plannedTests) {
+        testsQueued.addAndGet(plannedTests);
+    }
+
+    public void testStarted() {
+        testsRunning.incrementAndGet();
+        testsQueued.updateAndGet(queued -> Math.max(0, queued - 1));
+    }
+
+    public void testPassed() {
+        testsRunning.decrementAndGet();
+        testsPassed.increment();
+    }
+
+    public void testFailed() {
+        testsRunning.decrementAndGet();
+        testsFailed.increment();
+    }
+
+    /** A skipped test; retried attempts are queued again and counted separately.
+     *
+     * @param retried whether the retry analyzer runs the test again
+     * @param started whether {@link #testStarted()} counted the test; tests skipped because a
+     *                configuration method failed never start and leave the queue directly
+     */
+    public void testSkipped(boolean retried, boolean started) {
+        if (started) {
+            testsRunning.updateAndGet(running -> Math.max(0, running - 1));
+        } else {
+            testsQueued.updateAndGet(queued -> Math.max(0, queued - 1));
+        }
+        if (retried) {
+            testsRetried.increment();
+            testsQueued.incrementAndGet();
+        } else {
+            testsSkipped.increment();
+        }
+    }
+
+    public void sessionOpened() {
+        sessionsActive.incrementAndGet();
+        sessionsLaunched.increment();
+    }
+
+    public void sessionClosed() {
+        sessionsActive.updateAndGet(active -> Math.max(0, active - 1));
+    }
+
+    public int getTestsRunning() {
+        return testsRunning.get();
+    }
+
+    public int getTestsQueued() {
+        return testsQueued.get();
+    }
+
+    public long getTestsPassed() {
+        return testsPassed.sum();
+    }
+
+    public long getTestsFailed() {
+        return testsFailed.sum();
+    }
+
+    public long getTestsSkipped() {
+        return testsSkipped.sum();
+    }
+
+    public long getTestsRetried() {
+        return testsRetried.sum();
+    }
+
+    public int getSessionsActive() {
+        return sessionsActive.get();
+    }
+
+    public long getSessionsLaunched() {
+        return sessionsLaunched.sum();
+    }
+
+    public int getSessionCapacity() {
+        return sessionCapacity;
+    }
+}
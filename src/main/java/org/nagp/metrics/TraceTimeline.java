@@ -0,0 +1,263 @@
+package org.nagp.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.dataProvider.Constants;
+import org.nagp.framework.Helper;
+import org.openqa.selenium.By;
+import org.openqa.selenium.support.events.WebDriverListener;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Per-test timeline in Chrome Trace Event format, enabled with {@code traceTimeline}.
+ *
+ * <p>The test listener starts a trace when a test starts and writes it to
+ * {@code CurrentTestResults/traces/<testId>.json} when the test ends; the file opens in
+ * chrome://tracing or Perfetto. Listener hooks, waits, screenshots and report writes open a
+ * {@link Span} with try-with-resources, WebDriver commands are traced by {@link #driverListener()}.
+ * Page object method spans are derived from the stack of those events: a span covers the first to
+ * the last traced event made from the same outermost page object method. Events are put on one
+ * track per thread.</p>
+ *
+ * <p>When disabled, or outside a test, {@link #span(String, String)} returns a shared no-op span and
+ * no listener is attached to the driver.</p>
+ */
+public class TraceTimeline {
+    private static final Logger logger = LogManager.getLogger(TraceTimeline.class);
+    private static final boolean ENABLED = Boolean.parseBoolean(
+            new Helper().readConfig().getProperty("traceTimeline", "false").trim());
+    private static final long BASE_NANOS = System.nanoTime();
+    private static final Span NO_SPAN = new Span(null, null, null, null, 0);
+    private static final ThreadLocal<TraceTimeline> current = new ThreadLocal<>();
+    private static final Path tracesFolder = Paths.get(Constants.UPLOAD_PATH, "CurrentTestResults", "traces");
+
+    private final String testId;
+    private final long threadId;
+    private final List<String> events = new ArrayList<>();
+    private String pageMethod;
+    private long pageStart;
+    private long pageEnd;
+
+    private TraceTimeline(String testId) {
+        this.testId = testId;
+        this.threadId = Thread.currentThread().getId();
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /** Start the trace of the test running on the current thread; no-op when disabled.
+     *
+     * @param testId id of the test, used as process name and file name
+     */
+    public static void startTest(String testId) {
+        if (ENABLED) {
+            current.set(new TraceTimeline(testId));
+        }
+    }
+
+    /** Write the trace of the current thread's test and stop tracing.
+     *
+     * @return the trace file, or null if tracing is disabled or the file could not be written
+     */
+    public static Path finishTest() {
+        TraceTimeline trace = current.get();
+        if (trace == null) {
+            return null;
+        }
+        current.remove();
+        return trace.write();
+    }
+
+    /** Open a span on the current thread's trace; close it to record it.
+     *
+     * @param category track category, e.g. "listener", "wait", "driver"
+     * @param name span name
+     * @return span to close, a no-op span if no trace is active
+     */
+    public static Span span(String category, String name) {
+        return span(category, name, null);
+    }
+
+    /** Open a span with a detail shown in the trace viewer's arguments pane.
+     *
+     * @param category track category, e.g. "listener", "wait", "driver"
+     * @param name span name
+     * @param detail e.g. the locator waited for
+     * @return span to close, a no-op span if no trace is active
+     */
+    public static Span span(String category, String name, String detail) {
+        TraceTimeline trace = current.get();
+        if (trace == null) {
+            return NO_SPAN;
+        }
+        long start = now();
+        trace.enterPage(start);
+        return new Span(trace, category, name, detail, start);
+    }
+
+    /** @return listener tracing every WebDriver command; attach it only when {@link #isEnabled()} */
+    public static WebDriverListener driverListener() {
+        return new DriverListener();
+    }
+
+    private static long now() {
+        return (System.nanoTime() - BASE_NANOS) / 1000;
+    }
+
+    /** Follows the outermost page object method on the stack; closes the previous one when it changes. */
+    private void enterPage(long timestamp) {
+        String page = CallSites.outermostPageMethod();
+        if (page == null ? pageMethod != null : !page.equals(pageMethod)) {
+            closePage();
+            pageMethod = page;
+            pageStart = timestamp;
+            pageEnd = timestamp;
+        }
+    }
+
+    private void closePage() {
+        if (pageMethod != null) {
+            addEvent("page", pageMethod, null, pageStart, pageEnd);
+            pageMethod = null;
+        }
+    }
+
+    private void addEvent(String category, String name, String detail, long start, long end) {
+        StringBuilder event = new StringBuilder("{\"ph\":\"X\",\"pid\":1,\"tid\":").append(threadId)
+                .append(",\"cat\":").append(quote(category))
+                .append(",\"name\":").append(quote(name))
+                .append(",\"ts\":").append(start)
+                .append(",\"dur\":").append(Math.max(0, end - start));
+        if (detail != null) {
+            event.append(",\"args\":{\"detail\":").append(quote(detail)).append('}');
+        }
+        events.add(event.append('}').toString());
+        if (pageMethod != null && end > pageEnd) {
+            pageEnd = end;
+        }
+    }
+
+    private Path write() {
+        closePage();
+        Path traceFile = tracesFolder.resolve(testId.replaceAll("[^A-Za-z0-9._-]", "_") + ".json");
+        try {
+            Files.createDirectories(tracesFolder);
+            try (Writer writer = Files.newBufferedWriter(traceFile, StandardCharsets.UTF_8)) {
+                writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+                writer.write("{\"ph\":\"M\",\"pid\":1,\"name\":\"process_name\",\"args\":{\"name\":"
+                        + quote(testId) + "}},\n");
+                writer.write("{\"ph\":\"M\",\"pid\":1,\"tid\":" + threadId + ",\"name\":\"thread_name\",\"args\":{\"name\":"
+                        + quote(Thread.currentThread().getName()) + "}}");
+                for (String event : events) {
+                    writer.write(",\n");
+                    writer.write(event);
+                }
+                writer.write("\n]}\n");
+            }
+            logger.info("Trace timeline of {} written to {}", testId, traceFile);
+            return traceFile;
+        } catch (IOException e) {
+            logger.warn("Unable to write trace timeline {}", traceFile, e);
+            return null;
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /** Open span of a trace; recorded when closed. */
+    public static final class Span implements AutoCloseable {
+        private final TraceTimeline trace;
+        private final String category;
+        private final String name;
+        private final String detail;
+        private final long start;
+
+        private Span(TraceTimeline trace, String category, String name, String detail, long start) {
+            this.trace = trace;
+            this.category = category;
+            this.name = name;
+            this.detail = detail;
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+            // The trace may have been finished in between, e.g. by a listener hook inside the span.
+            if (trace != null && current.get() == trace) {
+                trace.addEvent(category, name, detail, start, now());
+            }
+        }
+    }
+
+    /** Traces WebDriver commands sent through an EventFiringDecorator. */
+    private static final class DriverListener implements WebDriverListener {
+        private final ThreadLocal<Deque<Span>> spans = ThreadLocal.withInitial(ArrayDeque::new);
+
+        @Override
+        public void beforeAnyCall(Object target, Method method, Object[] args) {
+            if (method.getDeclaringClass() != Object.class) {
+                String locator = args != null && args.length > 0 && args[0] instanceof By ? args[0].toString() : null;
+                spans.get().push(span("driver", method.getName(), locator));
+            }
+        }
+
+        @Override
+        public void afterAnyCall(Object target, Method method, Object[] args, Object result) {
+            closeSpan(method);
+        }
+
+        @Override
+        public void onError(Object target, Method method, Object[] args, InvocationTargetException e) {
+            closeSpan(method);
+        }
+
+        private void closeSpan(Method method) {
+            Span span = method.getDeclaringClass() != Object.class ? spans.get().poll() : null;
+            if (span != null) {
+                span.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.nagp.metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Attributes wait time to locators, callers and tests.
+ *
+ * <p>Every explicit wait (DeadlineWait), sleep and in-page wait reports its locator, duration and
+ * {@link Outcome} through {@link #record(String, long, Outcome)}. The caller is the nearest page
+ * object method on the stack, or the test method for waits made directly from a test. The same
+ * waits make up the wait time of the current thread ({@link #threadWaitMillis()}), where a wait
+ * nested in another counts once. The test listener adds each test's duration and that wait time
+ * with {@link #recordTest(String, long, long)}.
+ * {@link #report()} ranks locators and callers by total wait time and lists how much of every test
+ * was spent waiting versus acting.</p>
+ */
+public class WaitAttribution {
+    private static final int TOP = 25;
+    /** Waits kept per thread to discount waits nested in a later one; older ones are forgotten. */
+    private static final int MAX_THREAD_WAITS = 256;
+    private static WaitAttribution instance;
+
+    /** How a wait ended. */
+    public enum Outcome {
+        SUCCESS, TIMEOUT, BUDGET_EXCEEDED, ERROR
+    }
+
+    private final Map<String, Stats> byLocator = new ConcurrentHashMap<>();
+    private final Map<String, Stats> byCaller = new ConcurrentHashMap<>();
+    private final List<String[]> tests = Collections.synchronizedList(new ArrayList<String[]>());
+    private final Map<Outcome, LongAdder> waitsByOutcome = new EnumMap<>(Outcome.class);
+    private final Map<Outcome, LongAdder> nanosByOutcome = new EnumMap<>(Outcome.class);
+    /** Start and end of the waits counted into the thread's total, most recent last. */
+    private final ThreadLocal<Deque<long[]>> threadWaits = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ThreadLocal<long[]> threadWaitNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    private WaitAttribution() {
+        for (Outcome outcome : Outcome.values()) {
+            waitsByOutcome.put(outcome, new LongAdder());
+            nanosByOutcome.put(outcome, new LongAdder());
+        }
+    }
+
+    public static synchronized WaitAttribution getInstance() {
+        if (instance == null) {
+            instance = new WaitAttribution();
+        }
+        return instance;
+    }
+
+    /** Record a finished wait.
+     *
+     * @param description locator or description of the wait, e.g. an ExpectedCondition's toString()
+     * @param startNanos System.nanoTime() when the wait started
+     * @param outcome how the wait ended
+     */
+    public void record(String description, long startNanos, Outcome outcome) {
+        long end = System.nanoTime();
+        long nanos = end - startNanos;
+        addToThread(startNanos, end);
+        String caller = CallSites.nearest(className -> className.startsWith(CallSites.PAGE_PACKAGE)
+                || className.startsWith(CallSites.TEST_PACKAGE)).orElse("-");
+        byLocator.computeIfAbsent(locatorOf(description), k -> new Stats()).add(nanos, outcome, caller);
+        byCaller.computeIfAbsent(caller, k -> new Stats()).add(nanos, outcome, null);
+        waitsByOutcome.get(outcome).increment();
+        nanosByOutcome.get(outcome).add(nanos);
+    }
+
+    /** Add a wait to the thread's total, replacing the waits it contains. */
+    private void addToThread(long start, long end) {
+        Deque<long[]> waits = threadWaits.get();
+        long total = threadWaitNanos.get()[0] + end - start;
+        while (!waits.isEmpty() && waits.peekLast()[0] >= start) {
+            long[] nested = waits.pollLast();
+            total -= nested[1] - nested[0];
+        }
+        waits.addLast(new long[] {start, end});
+        if (waits.size() > MAX_THREAD_WAITS) {
+            waits.pollFirst();
+        }
+        threadWaitNanos.get()[0] = total;
+    }
+
+    /** @return time the current thread spent in waits since {@link #resetThread()}, in milliseconds */
+    public long threadWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(threadWaitNanos.get()[0]);
+    }
+
+    /** Start a new wait total for the current thread, typically at the start of a test. */
+    public void resetThread() {
+        threadWaits.get().clear();
+        threadWaitNanos.get()[0] = 0;
+    }
+
+    /** @return number of waits that ended with the given outcome so far */
+    public long waitCount(Outcome outcome) {
+        return waitsByOutcome.get(outcome).sum();
+    }
+
+    /** @return total time in nanoseconds spent in waits that ended with the given outcome */
+    public long waitNanos(Outcome outcome) {
+        return nanosByOutcome.get(outcome).sum();
+    }
+
+    /** Record how a test split its time between waiting and acting.
+     *
+     * @param testId test id as used in the results history
+     * @param durationMillis duration of the test
+     * @param waitMillis time the test spent in waits
+     */
+    public void recordTest(String testId, long durationMillis, long waitMillis) {
+        long waited = Math.min(waitMillis, durationMillis);
+        tests.add(new String[] {testId, String.valueOf(durationMillis), String.valueOf(waited)});
+    }
+
+    /** Ranked wait report for the end of the suite.
+     *
+     * @return report lines, or an empty list if no wait was recorded
+     */
+    public List<String> report() {
+        if (byLocator.isEmpty() && tests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add("Top locators by total wait time");
+        lines.add(Stats.header("locator") + "  (top caller)");
+        for (Map.Entry<String, Stats> entry : ranked(byLocator)) {
+            Stats stats = entry.getValue();
+            lines.add(stats.format(entry.getKey()) + "  (" + stats.topCaller() + ")");
+        }
+        lines.add("");
+        lines.add("Top callers by total wait time");
+        lines.add(Stats.header("caller"));
+        for (Map.Entry<String, Stats> entry : ranked(byCaller)) {
+            lines.add(entry.getValue().format(entry.getKey()));
+        }
+        lines.add("");
+        lines.add("Time per test spent waiting versus acting");
+        lines.add(String.format("%10s %7s %7s  %s", "totalS", "wait%", "act%", "test"));
+        List<String[]> sortedTests;
+        synchronized (tests) {
+            sortedTests = new ArrayList<>(tests);
+        }
+        sortedTests.sort(Comparator.comparingLong((String[] test) -> Long.parseLong(test[2])).reversed());
+        for (String[] test : sortedTests) {
+            long duration = Long.parseLong(test[1]);
+            double waitPercent = duration == 0 ? 0 : 100.0 * Long.parseLong(test[2]) / duration;
+            lines.add(String.format("%10.1f %6.1f%% %6.1f%%  %s", duration / 1000.0, waitPercent,
+                    duration == 0 ? 0 : 100 - waitPercent, test[0]));
+        }
+        return lines;
+    }
+
+    private static List<Map.Entry<String, Stats>> ranked(Map<String, Stats> stats) {
+        List<Map.Entry<String, Stats>> entries = new ArrayList<>(stats.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().totalNanos(), a.getValue().totalNanos()));
+        return entries.size() > TOP ? entries.subList(0, TOP) : entries;
+    }
+
+    /** Extracts the By part of a wait description, e.g. of "visibility of Proxy element for: ... 'By.id: x'". */
+    static String locatorOf(String description) {
+        if (description == null) {
+            return "-";
+        }
+        int by = description.indexOf("By.");
+        if (by >= 0) {
+            String locator = description.substring(by);
+            while (locator.endsWith("'") || locator.endsWith(")") || locator.endsWith("]")) {
+                locator = locator.substring(0, locator.length() - 1);
+            }
+            return locator;
+        }
+        int remoteLocator = description.lastIndexOf("-> ");
+        if (remoteLocator >= 0 && description.endsWith("]")) {
+            return "By." + description.substring(remoteLocator + 3, description.length() - 1);
+        }
+        return description;
+    }
+
+    private static final class Stats {
+        private final Map<Outcome, Integer> outcomes = new EnumMap<>(Outcome.class);
+        private final Map<String, Long> nanosByCaller = new HashMap<>();
+        private long totalNanos;
+        private long maxNanos;
+
+        synchronized void add(long nanos, Outcome outcome, String caller) {
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            outcomes.merge(outcome, 1, Integer::sum);
+            if (caller != null) {
+                nanosByCaller.merge(caller, nanos, Long::sum);
+            }
+        }
+
+        synchronized long totalNanos() {
+            return totalNanos;
+        }
+
+        synchronized String topCaller() {
+            String top = "-";
+            long topNanos = -1;
+            for (Map.Entry<String, Long> caller : nanosByCaller.entrySet()) {
+                if (caller.getValue() > topNanos) {
+                    top = caller.getKey();
+                    topNanos = caller.getValue();
+                }
+            }
+            return top;
+        }
+
+        static String header(String name) {
+            return String.format("%10s %6s %7s %7s %7s %6s %9s  %s", "totalS", "waits", "success", "timeout",
+                    "budget", "error", "maxS", name);
+        }
+
+        synchronized String format(String name) {
+            int waits = 0;
+            for (int count : outcomes.values()) {
+                waits += count;
+            }
+            return String.format("%10.2f %6d %7d %7d %7d %6d %9.2f  %s", totalNanos / 1e9, waits,
+                    outcomes.getOrDefault(Outcome.SUCCESS, 0), outcomes.getOrDefault(Outcome.TIMEOUT, 0),
+                    outcomes.getOrDefault(Outcome.BUDGET_EXCEEDED, 0), outcomes.getOrDefault(Outcome.ERROR, 0),
+                    maxNanos / 1e9, name);
+        }
+    }
+}
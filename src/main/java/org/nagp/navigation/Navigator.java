@@ -0,0 +1,272 @@
+package org.nagp.navigation;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.metrics.TraceTimeline;
+import org.openqa.selenium.WebDriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+
+/**
+ * Navigation graph of the page objects in a package, built from their {@link PageRoute} and
+ * {@link Transition} annotations, that takes a session to a page along the cheapest route.
+ *
+ * <p>The session's current page is recognised from its URL. From there the navigator may follow
+ * UI transitions or open any routed page through its deep link (cost 1), whichever is cheaper in
+ * total, so {@code navigateTo(TrainTicketPage.class)} loads the railways URL instead of clicking
+ * through the home page. Tests that verify a transition itself should keep calling it directly.</p>
+ */
+public class Navigator {
+    private static final Logger logger = LogManager.getLogger(Navigator.class);
+    private static final double DEEP_LINK_COST = 1.0;
+    private static final Map<String, Navigator> graphs = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, Pattern> urlPatterns = new LinkedHashMap<>();
+    private final Map<Class<?>, String> deepLinks = new HashMap<>();
+    private final Map<Class<?>, List<Method>> transitions = new HashMap<>();
+
+    /** A step of a route: a deep link (method null) or a transition from the previous page. */
+    private static final class Step {
+        final Class<?> page;
+        final Method transition;
+
+        Step(Class<?> page, Method transition) {
+            this.page = page;
+            this.transition = transition;
+        }
+
+        @Override
+        public String toString() {
+            return transition == null ? "open " + page.getSimpleName()
+                    : transition.getDeclaringClass().getSimpleName() + "." + transition.getName();
+        }
+    }
+
+    /** @return the navigation graph of the page objects in the package of the given page */
+    public static Navigator forPackageOf(Class<?> page) {
+        return graphs.computeIfAbsent(page.getPackage().getName(), Navigator::new);
+    }
+
+    private Navigator(String packageName) {
+        for (Class<?> page : pageClasses(packageName)) {
+            PageRoute route = page.getAnnotation(PageRoute.class);
+            if (route != null) {
+                deepLinks.put(page, route.path());
+                urlPatterns.put(page, Pattern.compile(route.urlPattern().isEmpty()
+                        ? Pattern.quote(route.path()) : route.urlPattern()));
+            }
+            List<Method> outgoing = new ArrayList<>();
+            for (Method method : page.getMethods()) {
+                if (method.isAnnotationPresent(Transition.class)) {
+                    Class<?>[] parameters = method.getParameterTypes();
+                    if (parameters.length > 1 || parameters.length == 1 && !WebDriver.class.equals(parameters[0])) {
+                        logger.warn("Ignoring transition {}.{}: it may only take a WebDriver",
+                                page.getSimpleName(), method.getName());
+                    } else {
+                        outgoing.add(method);
+                    }
+                }
+            }
+            transitions.put(page, outgoing);
+        }
+        logger.debug("Navigation graph of {}: routes {}, transitions {}", packageName, deepLinks, transitions);
+    }
+
+    /** Take the session to a page along the cheapest route.
+     *
+     * @param driver driver of the session
+     * @param baseUrl webHost the deep links are relative to
+     * @param page page object class to reach
+     * @param <T> page object type
+     * @return the page object of the reached page
+     */
+    public <T> T navigateTo(WebDriver driver, String baseUrl, Class<T> page) {
+        try (TraceTimeline.Span ignored = TraceTimeline.span("navigation", "navigateTo", page.getSimpleName())) {
+            Class<?> current = currentPage(driver.getCurrentUrl());
+            List<Step> route = route(current, page);
+            logger.info("Route from {} to {}: {}", current == null ? "unknown page" : current.getSimpleName(),
+                    page.getSimpleName(), route.isEmpty() ? "already there" : route);
+            Object pageObject = route.isEmpty() || route.get(0).transition != null ? create(current, driver) : null;
+            for (Step step : route) {
+                if (step.transition == null) {
+                    driver.get(baseUrl + deepLinks.get(step.page));
+                    pageObject = create(step.page, driver);
+                } else {
+                    pageObject = follow(step.transition, pageObject, driver);
+                }
+            }
+            return page.cast(pageObject);
+        }
+    }
+
+    /** Start of a test, from its own {@link StartsOn} or that of its class.
+     *
+     * @param testMethod test method
+     * @return the annotation, or null if the test starts on webHost
+     */
+    public static StartsOn startOf(Method testMethod) {
+        StartsOn start = testMethod.getAnnotation(StartsOn.class);
+        return start != null ? start : testMethod.getDeclaringClass().getAnnotation(StartsOn.class);
+    }
+
+    /** @return the deep link of a page, or null if it has no {@link PageRoute} */
+    public String urlOf(String baseUrl, Class<?> page) {
+        String path = deepLinks.get(page);
+        return path == null ? null : baseUrl + path;
+    }
+
+    /** @return the routed page whose URL pattern matches, or null */
+    Class<?> currentPage(String url) {
+        for (Map.Entry<Class<?>, Pattern> entry : urlPatterns.entrySet()) {
+            if (entry.getValue().matcher(url).find()) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /** Dijkstra from the current page, where every routed page is also reachable by its deep link. */
+    private List<Step> route(Class<?> current, Class<?> target) {
+        if (target.equals(current)) {
+            return Collections.emptyList();
+        }
+        Map<Class<?>, Double> cost = new HashMap<>();
+        Map<Class<?>, Step> via = new HashMap<>();
+        Map<Class<?>, Class<?>> previous = new HashMap<>();
+        for (Map.Entry<Class<?>, String> link : deepLinks.entrySet()) {
+            cost.put(link.getKey(), DEEP_LINK_COST);
+            via.put(link.getKey(), new Step(link.getKey(), null));
+        }
+        if (current != null) {
+            cost.put(current, 0.0);
+            via.remove(current);
+        }
+        Set<Class<?>> done = new LinkedHashSet<>();
+        while (true) {
+            Class<?> next = null;
+            for (Map.Entry<Class<?>, Double> entry : cost.entrySet()) {
+                if (!done.contains(entry.getKey()) && (next == null || entry.getValue() < cost.get(next))) {
+                    next = entry.getKey();
+                }
+            }
+            if (next == null) {
+                throw new IllegalStateException("No route to " + target.getSimpleName()
+                        + "; give it a @PageRoute or a @Transition leading to it");
+            }
+            if (next.equals(target)) {
+                break;
+            }
+            done.add(next);
+            for (Method transition : transitions.getOrDefault(next, Collections.<Method>emptyList())) {
+                Class<?> to = transition.getReturnType();
+                double total = cost.get(next) + transition.getAnnotation(Transition.class).cost();
+                if (!done.contains(to) && total < cost.getOrDefault(to, Double.MAX_VALUE)) {
+                    cost.put(to, total);
+                    via.put(to, new Step(to, transition));
+                    previous.put(to, next);
+                }
+            }
+        }
+        List<Step> route = new ArrayList<>();
+        for (Class<?> page = target; via.containsKey(page); page = previous.get(page)) {
+            route.add(0, via.get(page));
+            if (via.get(page).transition == null) {
+                break;
+            }
+        }
+        return route;
+    }
+
+    private static Object follow(Method transition, Object pageObject, WebDriver driver) {
+        Transition annotation = transition.getAnnotation(Transition.class);
+        Set<String> windows = annotation.newWindow() ? driver.getWindowHandles() : null;
+        Object[] arguments = transition.getParameterTypes().length == 0 ? new Object[0] : new Object[] {driver};
+        Object next;
+        try {
+            next = transition.invoke(pageObject, arguments);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new IllegalStateException(e.getCause());
+        }
+        if (windows != null) {
+            for (String window : driver.getWindowHandles()) {
+                if (!windows.contains(window)) {
+                    driver.switchTo().window(window);
+                }
+            }
+        }
+        return next;
+    }
+
+    private static Object create(Class<?> page, WebDriver driver) {
+        try {
+            return page.getConstructor(WebDriver.class).newInstance(driver);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Page object " + page.getName() + " needs a public (WebDriver) constructor", e);
+        }
+    }
+
+    /** Classes of a package from the classpath, in directories or jars. */
+    private static List<Class<?>> pageClasses(String packageName) {
+        List<Class<?>> classes = new ArrayList<>();
+        String path = packageName.replace('.', '/');
+        try {
+            Enumeration<URL> resources = Thread.currentThread().getContextClassLoader().getResources(path);
+            Set<String> names = new LinkedHashSet<>();
+            while (resources.hasMoreElements()) {
+                URL resource = resources.nextElement();
+                if ("jar".equals(resource.getProtocol())) {
+                    JarURLConnection connection = (JarURLConnection) resource.openConnection();
+                    connection.setUseCaches(false);
+                    try (JarFile jar = connection.getJarFile()) {
+                        for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+                            String name = entries.nextElement().getName();
+                            if (name.startsWith(path + "/") && name.indexOf('/', path.length() + 1) < 0) {
+                                names.add(name.substring(path.length() + 1));
+                            }
+                        }
+                    }
+                } else {
+                    String[] files = new File(URLDecoder.decode(resource.getFile(), StandardCharsets.UTF_8.name())).list();
+                    if (files != null) {
+                        Collections.addAll(names, files);
+                    }
+                }
+            }
+            for (String name : names) {
+                if (name.endsWith(".class") && !name.contains("$")) {
+                    classes.add(Class.forName(packageName + "." + name.substring(0, name.length() - 6), false,
+                            Thread.currentThread().getContextClassLoader()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,25 @@
+package org.nagp.navigation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Where a page object lives: its deep link relative to {@code webHost} and the pattern that
+ * recognises it in the browser's current URL. Used by {@link Navigator} to open the page directly.
+ *
+ * <pre>
+ *   &#64;PageRoute(path = "railways", urlPattern = "/railways")
+ *   public class TrainTicketPage extends WebElements { ... }
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface PageRoute {
+    /** Deep link appended to webHost; empty for webHost itself. */
+    String path();
+
+    /** Regular expression found in the current URL while the page is open; defaults to the path. */
+    String urlPattern() default "";
+}
@@ -0,0 +1,29 @@
+package org.nagp.navigation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The page, and optionally the captured browser state, a test or every test in a class starts on.
+ * The session is reset onto it before the test runs, and tests that start on the same page run
+ * back to back so that the reset does not have to load it again. Tests without it start on
+ * webHost.
+ *
+ * <pre>
+ *   &#64;StartsOn(value = TrainTicketPage.class, state = "trainsTab")
+ *   &#64;Test
+ *   public void verifyUserGetsErrorOnInvalidPNR() { ... }
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface StartsOn {
+    /** Page object class of the starting page. */
+    Class<?> value();
+
+    /** Key of a browser state snapshot: the first test with it captures the state on the page,
+     * later tests restore it instead of repeating the way there. */
+    String state() default "";
+}
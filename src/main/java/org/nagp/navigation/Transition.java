@@ -0,0 +1,20 @@
+package org.nagp.navigation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a page object method as a UI transition to the page object it returns, so that
+ * {@link Navigator} can route through it. The method may only take a WebDriver argument.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Transition {
+    /** Relative cost in page loads; a deep link costs 1. */
+    double cost() default 1.5;
+
+    /** True if the target page opens in a new window, which the navigator switches to. */
+    boolean newWindow() default false;
+}
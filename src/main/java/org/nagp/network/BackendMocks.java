@@ -0,0 +1,255 @@
+package org.nagp.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.remote.http.Contents;
+import org.openqa.selenium.remote.http.Filter;
+import org.openqa.selenium.remote.http.HttpHandler;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Answers a browser session's backend calls from mock fixtures through DevTools Fetch interception.
+ *
+ * <p>A fixture is an XML file under resources/mocks that maps URL patterns to canned responses:</p>
+ * <pre>
+ *   &lt;mocks&gt;
+ *     &lt;mock method="GET" url="/autosuggest\?.*term=Delhi" status="200" contentType="application/json"&gt;
+ *       &lt;body&gt;&lt;![CDATA[{"items": [...]}]]&gt;&lt;/body&gt;
+ *     &lt;/mock&gt;
+ *   &lt;/mocks&gt;
+ * </pre>
+ * <p>{@code url} is a regular expression searched in the full request URL, {@code method} is
+ * optional. The first matching mock answers the request; everything else goes on to the network
+ * (or to record/replay). Tests choose their fixture with {@link UseMocks}; tests without it, and
+ * all tests while {@code mockBackend} is off, hit the real endpoints.</p>
+ *
+ * <p>Fixtures are captured, not written by hand: with {@code networkMode=record} and
+ * {@code mockBackend=false} the JSON responses each {@link UseMocks} test receives are collected
+ * and written to {@code <fixture>.mocks.xml} in CurrentTestResults at the end of the suite, ready
+ * to be reviewed and copied to resources/mocks.</p>
+ */
+public class BackendMocks implements Filter {
+    private static final Logger logger = LogManager.getLogger(BackendMocks.class);
+    private static final Map<String, List<Mock>> FIXTURES = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, String>> CAPTURED = new ConcurrentHashMap<>();
+
+    private final boolean capture;
+    private volatile String fixture;
+    private volatile List<Mock> active = Collections.emptyList();
+
+    static final class Mock {
+        final String method;
+        final Pattern url;
+        final int status;
+        final String contentType;
+        final byte[] body;
+
+        Mock(String method, Pattern url, int status, String contentType, byte[] body) {
+            this.method = method;
+            this.url = url;
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        boolean matches(HttpRequest request) {
+            return (method == null || method.equalsIgnoreCase(request.getMethod().toString()))
+                    && url.matcher(request.getUri()).find();
+        }
+    }
+
+    /** Mocks that answer requests from the fixtures. */
+    public BackendMocks() {
+        this(false);
+    }
+
+    /**
+     * @param capture true to let every request through and collect the JSON responses of tests
+     *                with a fixture instead of answering them
+     */
+    public BackendMocks(boolean capture) {
+        this.capture = capture;
+    }
+
+    /** Fixture a test asks for, from its own {@link UseMocks} or that of its class.
+     *
+     * @param testMethod test method about to run
+     * @return fixture name, or null if the test uses the real endpoints
+     */
+    public static String fixtureOf(Method testMethod) {
+        UseMocks mocks = testMethod.getAnnotation(UseMocks.class);
+        if (mocks == null) {
+            mocks = testMethod.getDeclaringClass().getAnnotation(UseMocks.class);
+        }
+        return mocks == null ? null : mocks.value();
+    }
+
+    /** Answer matching requests of this session from a fixture until the next call.
+     *
+     * @param fixtureName fixture under resources/mocks, or null to use the real endpoints
+     */
+    public void use(String fixtureName) {
+        if (fixtureName == null) {
+            fixture = null;
+            active = Collections.emptyList();
+            return;
+        }
+        if (capture) {
+            fixture = fixtureName;
+            logger.info("Capturing backend responses for the fixture {}", fixtureName);
+            return;
+        }
+        active = FIXTURES.computeIfAbsent(fixtureName, BackendMocks::load);
+        fixture = fixtureName;
+        logger.info("Backend mocks from {}: {} responses", fixtureName, active.size());
+    }
+
+    @Override
+    public HttpHandler apply(HttpHandler next) {
+        if (capture) {
+            return request -> {
+                HttpResponse response = next.execute(request);
+                String capturing = fixture;
+                String contentType = response.getHeader("Content-Type");
+                if (capturing != null && response.getStatus() / 100 == 2
+                        && contentType != null && contentType.contains("json")) {
+                    byte[] body = Contents.bytes(response.getContent());
+                    response.setContent(Contents.bytes(body));
+                    CAPTURED.computeIfAbsent(capturing, name -> new ConcurrentSkipListMap<>())
+                            .put(request.getMethod() + " " + urlPattern(request.getUri()),
+                                    mockXml(request, response, new String(body, StandardCharsets.UTF_8)));
+                }
+                return response;
+            };
+        }
+        return request -> {
+            for (Mock mock : active) {
+                if (mock.matches(request)) {
+                    logger.debug("Mocked from {}: {} {}", fixture, request.getMethod(), request.getUri());
+                    HttpResponse response = new HttpResponse().setStatus(mock.status);
+                    if (mock.contentType != null) {
+                        response.setHeader("Content-Type", mock.contentType);
+                    }
+                    // Mocked calls are usually cross-origin XHRs from the page, often with credentials,
+                    // which browsers only accept with the page's own origin
+                    String origin = request.getHeader("Origin");
+                    if (origin != null) {
+                        response.setHeader("Access-Control-Allow-Origin", origin);
+                        response.setHeader("Access-Control-Allow-Credentials", "true");
+                        response.setHeader("Vary", "Origin");
+                    }
+                    return response.setContent(Contents.bytes(mock.body));
+                }
+            }
+            return next.execute(request);
+        };
+    }
+
+    /** Fixtures captured in this run, as XML documents in the format {@link #use} reads.
+     *
+     * @return lines of each captured fixture by fixture name, empty unless capturing
+     */
+    public static Map<String, List<String>> captured() {
+        Map<String, List<String>> fixtures = new TreeMap<>();
+        CAPTURED.forEach((name, mocks) -> {
+            List<String> lines = new ArrayList<>();
+            lines.add("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+            lines.add("<!-- Captured on " + LocalDate.now() + " with networkMode=record; review and copy to"
+                    + " resources/mocks/" + name + ".xml -->");
+            lines.add("<mocks>");
+            lines.addAll(mocks.values());
+            lines.add("</mocks>");
+            fixtures.put(name, lines);
+        });
+        return fixtures;
+    }
+
+    /** Path and stable query parameters of a URL as a pattern that ignores host and volatile parameters. */
+    private static String urlPattern(String url) {
+        String pathAndQuery;
+        try {
+            URI uri = new URI(url);
+            pathAndQuery = uri.getRawPath() + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+        } catch (URISyntaxException e) {
+            pathAndQuery = url;
+        }
+        int query = pathAndQuery.indexOf('?');
+        if (query < 0) {
+            return Pattern.quote(pathAndQuery) + "($|\\?)";
+        }
+        Set<String> volatileParams = NetworkArchive.getInstance().getVolatileParams();
+        StringBuilder pattern = new StringBuilder(Pattern.quote(pathAndQuery.substring(0, query))).append("\\?");
+        for (String param : pathAndQuery.substring(query + 1).split("&")) {
+            String name = param.contains("=") ? param.substring(0, param.indexOf('=')) : param;
+            if (!param.isEmpty() && !volatileParams.contains(name)) {
+                pattern.append("(.*&)?").append(Pattern.quote(param)).append("(&|$)");
+            }
+        }
+        return pattern.toString();
+    }
+
+    private static String mockXml(HttpRequest request, HttpResponse response, String body) {
+        String contentType = response.getHeader("Content-Type");
+        return "    <mock method=\"" + request.getMethod() + "\" url=\"" + escape(urlPattern(request.getUri()))
+                + "\" status=\"" + response.getStatus() + "\" contentType=\"" + escape(contentType) + "\">\n"
+                + "        <body><![CDATA[" + body.replace("]]>", "]]]]><![CDATA[>") + "]]></body>\n"
+                + "    </mock>";
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;");
+    }
+
+    private static List<Mock> load(String fixtureName) {
+        String resource = "/mocks/" + (fixtureName.endsWith(".xml") ? fixtureName : fixtureName + ".xml");
+        List<Mock> mocks = new ArrayList<>();
+        try (InputStream in = BackendMocks.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                logger.error("Mock fixture {} does not exist; the test uses the real endpoints", resource);
+                return mocks;
+            }
+            Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+            NodeList nodes = document.getElementsByTagName("mock");
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Element mock = (Element) nodes.item(i);
+                NodeList body = mock.getElementsByTagName("body");
+                mocks.add(new Mock(attribute(mock, "method"), Pattern.compile(mock.getAttribute("url")),
+                        mock.hasAttribute("status") ? Integer.parseInt(mock.getAttribute("status").trim()) : 200,
+                        attribute(mock, "contentType"),
+                        (body.getLength() == 0 ? "" : body.item(0).getTextContent().trim())
+                                .getBytes(StandardCharsets.UTF_8)));
+            }
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            logger.error("Problem reading the mock fixture {}", resource, e);
+        }
+        return mocks;
+    }
+
+    private static String attribute(Element element, String name) {
+        return element.hasAttribute(name) ? element.getAttribute(name) : null;
+    }
+}
@@ -0,0 +1,508 @@
+package org.nagp.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.dataProvider.Constants;
+import org.nagp.framework.Helper;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * In-JVM caching HTTP(S) forward proxy shared by all browser sessions, enabled with {@code proxyCache}.
+ *
+ * <p>Every new ChromeDriver starts with an empty profile and downloads the site's scripts, styles,
+ * fonts and images again. With the proxy, TestDriver points Chrome at this server and those
+ * assets come from the {@link ProxyCache} once one session has fetched them. Only HTTPS connections
+ * to the hosts in {@code proxyCacheHosts} are opened, with a self-signed key generated into the
+ * cache folder on first use (Chrome sessions already accept any certificate); every other CONNECT
+ * is tunnelled blindly. Only GETs of static assets (scripts, styles, fonts, images) go through the
+ * cache. Any other request, including WebSocket upgrades, event streams and long polls, is relayed
+ * byte for byte to the origin for the rest of its connection, so nothing is buffered or rewritten.
+ * Hit rate and bytes saved are written to proxy-cache.txt at the end of the suite.</p>
+ */
+public class CachingProxy {
+    private static final Logger logger = LogManager.getLogger(CachingProxy.class);
+    private static final String KEYSTORE_PASSWORD = "nagp-proxy";
+    /** Hop-by-hop and framing headers that are not forwarded as they are. */
+    private static final List<String> HOP_HEADERS = Arrays.asList("connection", "keep-alive", "proxy-connection",
+            "proxy-authorization", "te", "trailer", "transfer-encoding", "upgrade", "content-length", "host");
+    private static final Pattern STATIC_ASSET = Pattern.compile(
+            "\\.(js|mjs|css|png|jpe?g|gif|webp|avif|svg|ico|woff2?|ttf|otf|eot)$", Pattern.CASE_INSENSITIVE);
+    private static CachingProxy instance;
+
+    static {
+        // Otherwise HttpURLConnection silently drops Origin and the CORS preflight headers
+        System.setProperty("sun.net.http.allowRestrictedHeaders", "true");
+    }
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final ProxyCache cache;
+    private final SSLContext sslContext;
+    private final List<String> cachedHosts;
+
+    /** Start the proxy of this JVM on first use.
+     *
+     * @return the running proxy, or null if {@code proxyCache} is off or the proxy could not start
+     */
+    public static synchronized CachingProxy getInstance() {
+        if (instance == null) {
+            Properties configProps = new Helper().readConfig();
+            if (!Boolean.parseBoolean(configProps.getProperty("proxyCache", "false").trim())) {
+                return null;
+            }
+            Path directory = Paths.get(Constants.UPLOAD_PATH, "ProxyCache");
+            long maxBytes = Long.parseLong(configProps.getProperty("proxyCacheMaxMb", "512").trim()) * 1024 * 1024;
+            try {
+                List<String> hosts = new ArrayList<>();
+                for (String host : configProps.getProperty("proxyCacheHosts", "").split(",")) {
+                    if (!host.trim().isEmpty()) {
+                        hosts.add(host.trim().toLowerCase());
+                    }
+                }
+                instance = new CachingProxy(new ProxyCache(directory, maxBytes), directory.resolve("proxy.p12"), hosts);
+            } catch (Exception e) {
+                logger.warn("Unable to start the caching proxy; sessions use the network directly", e);
+            }
+        }
+        return instance;
+    }
+
+    /** @return the proxy cache if the proxy was started in this JVM, otherwise null */
+    public static synchronized ProxyCache getCache() {
+        return instance == null ? null : instance.cache;
+    }
+
+    CachingProxy(ProxyCache cache, Path keyStore, List<String> cachedHosts) throws Exception {
+        this.cache = cache;
+        this.cachedHosts = cachedHosts;
+        this.sslContext = sslContext(keyStore);
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "caching-proxy");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::accept);
+        logger.info("Caching proxy listening on {}", getAddress());
+    }
+
+    /** @return host:port to configure as the browser's HTTP and SSL proxy */
+    public String getAddress() {
+        return serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort();
+    }
+
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.debug("Error closing the caching proxy", e);
+        }
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                executor.execute(() -> handle(client));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.warn("Caching proxy failed to accept a connection", e);
+                }
+            }
+        }
+    }
+
+    private void handle(Socket client) {
+        try (Socket socket = client) {
+            socket.setSoTimeout((int) TimeUnit.MINUTES.toMillis(2));
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String requestLine = readLine(in);
+            if (requestLine == null) {
+                return;
+            }
+            if (requestLine.startsWith("CONNECT ")) {
+                String authority = requestLine.split(" ")[1];
+                readHeaders(in);
+                String host = hostOf(authority);
+                if (!authority.endsWith(":443") || !isCachedHost(host)) {
+                    try (Socket upstream = new Socket(host, portOf(authority, 443))) {
+                        socket.getOutputStream().write("HTTP/1.1 200 Connection Established\r\n\r\n"
+                                .getBytes(StandardCharsets.ISO_8859_1));
+                        pipe(in, socket, upstream);
+                    }
+                    return;
+                }
+                socket.getOutputStream().write("HTTP/1.1 200 Connection Established\r\n\r\n"
+                        .getBytes(StandardCharsets.ISO_8859_1));
+                // The browser only starts the TLS handshake after the 200, so nothing of it is buffered in 'in'
+                SSLSocket tls = (SSLSocket) sslContext.getSocketFactory()
+                        .createSocket(socket, host, socket.getPort(), true);
+                tls.setUseClientMode(false);
+                String origin = "https://" + host;
+                InputStream tlsIn = new BufferedInputStream(tls.getInputStream());
+                serve(readLine(tlsIn), tlsIn, tls, origin);
+            } else {
+                serve(requestLine, in, socket, null);
+            }
+        } catch (SocketException e) {
+            logger.trace("Proxy connection closed", e);
+        } catch (IOException e) {
+            logger.debug("Proxy connection failed", e);
+        }
+    }
+
+    /** Answer requests on one connection until the browser closes it, or relay the rest of the
+     * connection to the origin from the first request that is not a static asset fetch.
+     *
+     * @param origin scheme and authority of an opened HTTPS connection, null for plain proxy requests
+     */
+    private void serve(String requestLine, InputStream in, Socket client, String origin) throws IOException {
+        OutputStream out = client.getOutputStream();
+        while (requestLine != null && !requestLine.isEmpty()) {
+            String[] parts = requestLine.split(" ");
+            String method = parts[0];
+            String url = origin == null ? parts[1] : origin + parts[1];
+            List<String[]> headers = readHeaders(in);
+            if (!isStaticAssetFetch(method, url, headers)) {
+                if (origin == null && NetworkHelper.header(headers, "Upgrade") == null) {
+                    // A plain proxy connection may carry requests to other hosts next; end it after this one
+                    headers = without(headers, "Connection", "connection");
+                    headers.add(new String[] {"Connection", "close"});
+                }
+                relay(method, url, parts.length > 2 ? parts[2] : "HTTP/1.1", headers, in, client);
+                return;
+            }
+            String contentLength = NetworkHelper.header(headers, "Content-Length");
+            byte[] body = contentLength == null ? new byte[0] : readFully(in, Integer.parseInt(contentLength.trim()));
+            exchange(method, url, headers, body, out);
+            requestLine = readLine(in);
+        }
+    }
+
+    private void exchange(String method, String url, List<String[]> headers, byte[] body, OutputStream out)
+            throws IOException {
+        String key = ProxyCache.key(url, NetworkHelper.header(headers, "Accept-Encoding"));
+        List<String[]> forwarded = without(headers, "If-None-Match", "If-Modified-Since");
+        ProxyCache.Entry entry = cache.get(key);
+        if (entry != null && !entry.isFresh()) {
+            String etag = entry.header("ETag");
+            String lastModified = entry.header("Last-Modified");
+            if (etag != null || lastModified != null) {
+                List<String[]> conditional = new ArrayList<>(forwarded);
+                if (etag != null) {
+                    conditional.add(new String[] {"If-None-Match", etag});
+                }
+                if (lastModified != null) {
+                    conditional.add(new String[] {"If-Modified-Since", lastModified});
+                }
+                Response response = forward(method, url, conditional, body);
+                if (response.status != 304) {
+                    cache.store(key, url, headers, response.status, response.headers, response.body);
+                    write(out, response.status, response.headers, response.body);
+                    return;
+                }
+                cache.refresh(entry, response.headers);
+                if (replyFromCache(entry, true, out)) {
+                    return;
+                }
+            }
+        } else if (entry != null && replyFromCache(entry, false, out)) {
+            return;
+        }
+        Response response = forward(method, url, forwarded, body);
+        cache.store(key, url, headers, response.status, response.headers, response.body);
+        write(out, response.status, response.headers, response.body);
+    }
+
+    /** Send a request as it is to its origin and pass everything on the connection through in both
+     * directions until either side closes it. */
+    private void relay(String method, String url, String version, List<String[]> headers, InputStream in,
+                       Socket client) throws IOException {
+        URL target = new URL(url);
+        boolean https = "https".equalsIgnoreCase(target.getProtocol());
+        int port = target.getPort() < 0 ? target.getDefaultPort() : target.getPort();
+        StringBuilder head = new StringBuilder(method).append(' ')
+                .append(target.getFile().isEmpty() ? "/" : target.getFile()).append(' ').append(version).append("\r\n");
+        for (String[] header : headers) {
+            if (!header[0].toLowerCase().startsWith("proxy-")) {
+                head.append(header[0]).append(": ").append(header[1]).append("\r\n");
+            }
+        }
+        head.append("\r\n");
+        Socket upstream;
+        try {
+            upstream = https ? SSLSocketFactory.getDefault().createSocket(target.getHost(), port)
+                    : new Socket(target.getHost(), port);
+            if (upstream instanceof SSLSocket) {
+                SSLParameters parameters = ((SSLSocket) upstream).getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                ((SSLSocket) upstream).setSSLParameters(parameters);
+            }
+        } catch (IOException e) {
+            logger.debug("Proxy relay to {} failed", url, e);
+            write(client.getOutputStream(), 502, new ArrayList<>(), new byte[0]);
+            return;
+        }
+        try (Socket connection = upstream) {
+            connection.getOutputStream().write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+            pipe(in, client, connection);
+        }
+    }
+
+    /** Copy bytes between the browser and the origin in both directions, flushing as they arrive,
+     * until the origin side ends. */
+    private void pipe(InputStream clientIn, Socket client, Socket upstream) throws IOException {
+        // Tunnels carry WebSockets and long polls, which may be idle for a long time
+        client.setSoTimeout(0);
+        OutputStream upstreamOut = upstream.getOutputStream();
+        executor.execute(() -> {
+            try {
+                copy(clientIn, upstreamOut);
+                upstream.shutdownOutput();
+            } catch (IOException e) {
+                logger.trace("Proxy tunnel closed by the browser", e);
+            }
+        });
+        copy(upstream.getInputStream(), client.getOutputStream());
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[16384];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+            out.flush();
+        }
+    }
+
+    private boolean isCachedHost(String host) {
+        String lower = host.toLowerCase();
+        for (String cached : cachedHosts) {
+            if (lower.equals(cached) || lower.endsWith("." + cached)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** A GET of a script, style, font or image that is not an upgrade or event stream. */
+    private static boolean isStaticAssetFetch(String method, String url, List<String[]> headers) {
+        if (!"GET".equals(method) || NetworkHelper.header(headers, "Upgrade") != null
+                || String.valueOf(NetworkHelper.header(headers, "Accept")).contains("text/event-stream")) {
+            return false;
+        }
+        int end = url.length();
+        for (char delimiter : new char[] {'?', '#'}) {
+            int index = url.indexOf(delimiter);
+            if (index >= 0 && index < end) {
+                end = index;
+            }
+        }
+        return STATIC_ASSET.matcher(url.substring(0, end)).find();
+    }
+
+    private static String hostOf(String authority) {
+        int colon = authority.lastIndexOf(':');
+        return colon < 0 || authority.endsWith("]") ? authority : authority.substring(0, colon);
+    }
+
+    private static int portOf(String authority, int defaultPort) {
+        int colon = authority.lastIndexOf(':');
+        return colon < 0 || authority.endsWith("]") ? defaultPort : Integer.parseInt(authority.substring(colon + 1));
+    }
+
+    private boolean replyFromCache(ProxyCache.Entry entry, boolean revalidated, OutputStream out) throws IOException {
+        byte[] body = cache.serve(entry, revalidated);
+        if (body == null) {
+            return false;
+        }
+        List<String[]> headers = new ArrayList<>(entry.getHeaders());
+        headers.add(new String[] {"X-Cache", revalidated ? "REVALIDATED" : "HIT"});
+        write(out, entry.getStatus(), headers, body);
+        return true;
+    }
+
+    private static final class Response {
+        final int status;
+        final List<String[]> headers;
+        final byte[] body;
+
+        Response(int status, List<String[]> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    /** Send a request to the origin; connection failures are answered with a 502. */
+    private Response forward(String method, String url, List<String[]> headers, byte[] body) {
+        try {
+            return send(method, url, headers, body);
+        } catch (IOException e) {
+            logger.debug("Proxy request to {} failed", url, e);
+            return new Response(502, new ArrayList<>(), new byte[0]);
+        }
+    }
+
+    private Response send(String method, String url, List<String[]> headers, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection(java.net.Proxy.NO_PROXY);
+        connection.setInstanceFollowRedirects(false);
+        connection.setUseCaches(false);
+        connection.setRequestMethod(method);
+        for (String[] header : headers) {
+            if (!HOP_HEADERS.contains(header[0].toLowerCase())) {
+                connection.addRequestProperty(header[0], header[1]);
+            }
+        }
+        if (body.length > 0) {
+            connection.setDoOutput(true);
+            try (OutputStream upstream = connection.getOutputStream()) {
+                upstream.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        List<String[]> responseHeaders = new ArrayList<>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() != null && !HOP_HEADERS.contains(header.getKey().toLowerCase())) {
+                for (String value : header.getValue()) {
+                    responseHeaders.add(new String[] {header.getKey(), value});
+                }
+            }
+        }
+        InputStream stream = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        byte[] responseBody = new byte[0];
+        if (stream != null) {
+            try (InputStream upstream = stream) {
+                responseBody = readAll(upstream);
+            }
+        }
+        return new Response(status, responseHeaders, responseBody);
+    }
+
+    private static void write(OutputStream out, int status, List<String[]> headers, byte[] body) throws IOException {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(status == 200 ? " OK\r\n" : " \r\n");
+        for (String[] header : headers) {
+            head.append(header[0]).append(": ").append(header[1]).append("\r\n");
+        }
+        head.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        out.flush();
+    }
+
+    private static List<String[]> without(List<String[]> headers, String... names) {
+        List<String[]> kept = new ArrayList<>();
+        for (String[] header : headers) {
+            if (!Arrays.asList(names).contains(header[0])) {
+                kept.add(header);
+            }
+        }
+        return kept;
+    }
+
+    private static List<String[]> readHeaders(InputStream in) throws IOException {
+        List<String[]> headers = new ArrayList<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.add(new String[] {line.substring(0, colon).trim(), line.substring(colon + 1).trim()});
+            }
+        }
+        return headers;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return b == -1 && line.size() == 0 ? null : new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int count = in.read(bytes, read, length - read);
+            if (count < 0) {
+                throw new IOException("Request body ended after " + read + " of " + length + " bytes");
+            }
+            read += count;
+        }
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16384];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    /** Load the proxy's TLS key, generating a self-signed one with keytool the first time. */
+    private static SSLContext sslContext(Path keyStore) throws Exception {
+        if (!Files.exists(keyStore)) {
+            Files.createDirectories(keyStore.getParent());
+            String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+            Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "proxy", "-keyalg", "RSA",
+                    "-keysize", "2048", "-validity", "3650", "-dname", "CN=NAGP caching proxy",
+                    "-keystore", keyStore.toString(), "-storetype", "PKCS12",
+                    "-storepass", KEYSTORE_PASSWORD, "-keypass", KEYSTORE_PASSWORD)
+                    .redirectErrorStream(true).start();
+            readAll(process.getInputStream());
+            if (process.waitFor() != 0) {
+                throw new IOException("keytool could not create " + keyStore);
+            }
+        }
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(keyStore)) {
+            store.load(in, KEYSTORE_PASSWORD.toCharArray());
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(store, KEYSTORE_PASSWORD.toCharArray());
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        return context;
+    }
+}
@@ -0,0 +1,249 @@
+package org.nagp.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.dataProvider.Constants;
+import org.nagp.framework.Helper;
+import org.openqa.selenium.json.Json;
+import org.openqa.selenium.remote.http.Contents;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * On-disk archive of HTTP exchanges made by the browser, written in record mode and served in
+ * replay mode (see {@link RecordReplay}).
+ *
+ * <p>Each exchange is one JSON file under a folder per host in the archive directory
+ * (NetworkArchive under the resources folder unless {@code networkArchive} is configured), named
+ * after the hash of method, URL and request body. Replay first looks for the exact request and
+ * then for the same method, URL and body without the volatile query parameters listed in
+ * {@code networkVolatileParams}, so cache busters and timestamps do not cause misses. Such loose
+ * matches are counted and listed separately in network-archive.txt.</p>
+ */
+public class NetworkArchive {
+    private static final Logger logger = LogManager.getLogger(NetworkArchive.class);
+    /** Headers that describe the wire encoding; recorded bodies are stored decoded. */
+    private static final List<String> WIRE_HEADERS = Arrays.asList("content-length", "content-encoding",
+            "transfer-encoding", "connection", "keep-alive");
+    private static NetworkArchive instance;
+
+    private final Path directory;
+    private final Json json = new Json();
+    private final Map<String, Map<String, Object>> exact = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Object>> loose = new ConcurrentHashMap<>();
+    private final Set<String> volatileParams;
+    private final Set<String> misses = ConcurrentHashMap.newKeySet();
+    private final Set<String> looseMatches = ConcurrentHashMap.newKeySet();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder looseHits = new LongAdder();
+    private final LongAdder recorded = new LongAdder();
+
+    public static synchronized NetworkArchive getInstance() {
+        if (instance == null) {
+            Properties configProps = new Helper().readConfig();
+            Set<String> volatileParams = new HashSet<>();
+            for (String param : configProps.getProperty("networkVolatileParams", "").split(",")) {
+                if (!param.trim().isEmpty()) {
+                    volatileParams.add(param.trim());
+                }
+            }
+            instance = new NetworkArchive(getDirectory(configProps), volatileParams);
+            if (NetworkMode.fromConfig(configProps) == NetworkMode.REPLAY) {
+                instance.load();
+            }
+        }
+        return instance;
+    }
+
+    /** Resolve the archive directory.
+     *
+     * @param configProps configuration properties
+     * @return the configured archive directory or NetworkArchive under the resources folder
+     */
+    public static Path getDirectory(Properties configProps) {
+        String configured = configProps.getProperty("networkArchive", "").trim();
+        return configured.isEmpty() ? Paths.get(Constants.UPLOAD_PATH, "NetworkArchive") : Paths.get(configured);
+    }
+
+    /**
+     * @param directory archive directory
+     * @param volatileParams query parameters ignored when no exact recording matches
+     */
+    public NetworkArchive(Path directory, Set<String> volatileParams) {
+        this.directory = directory;
+        this.volatileParams = Collections.unmodifiableSet(new HashSet<>(volatileParams));
+    }
+
+    /** @return query parameters ignored when no exact recording matches */
+    public Set<String> getVolatileParams() {
+        return volatileParams;
+    }
+
+    /** Read all recorded exchanges into memory. */
+    public void load() {
+        if (!Files.isDirectory(directory)) {
+            logger.warn("Network archive {} does not exist; every request will miss", directory);
+            return;
+        }
+        try (DirectoryStream<Path> hosts = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path host : hosts) {
+                List<Path> files = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(host, "*.json")) {
+                    stream.forEach(files::add);
+                }
+                // Sorted, so that the same archive always resolves loose keys the same way
+                Collections.sort(files);
+                for (Path file : files) {
+                    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                        Map<String, Object> exchange = json.toType(reader, Json.MAP_TYPE);
+                        String key = (String) exchange.get("key");
+                        String method = (String) exchange.get("method");
+                        String url = (String) exchange.get("url");
+                        exact.put(key, exchange);
+                        loose.put(looseKey(method, url, key.substring((method + " " + url).length()).trim()),
+                                exchange);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Unable to read the network archive {}", directory, e);
+        }
+        logger.info("Loaded {} recorded exchanges from {}", exact.size(), directory);
+    }
+
+    /** Store an exchange, replacing an earlier recording of the same request.
+     *
+     * @param request request sent by the browser
+     * @param response response received from the site
+     * @param body decoded response body
+     */
+    public void record(HttpRequest request, HttpResponse response, byte[] body) {
+        String key = exactKey(request);
+        Map<String, Object> exchange = new LinkedHashMap<>();
+        exchange.put("key", key);
+        exchange.put("method", request.getMethod().toString());
+        exchange.put("url", request.getUri());
+        exchange.put("status", response.getStatus());
+        List<List<String>> headers = new ArrayList<>();
+        response.forEachHeader((name, value) -> {
+            if (!WIRE_HEADERS.contains(name.toLowerCase())) {
+                headers.add(Arrays.asList(name, value));
+            }
+        });
+        exchange.put("headers", headers);
+        exchange.put("body", Base64.getEncoder().encodeToString(body));
+        try {
+            Path hostFolder = directory.resolve(hostOf(request.getUri()));
+            Files.createDirectories(hostFolder);
+            NetworkHelper.writeAtomically(hostFolder.resolve(NetworkHelper.sha1(key) + ".json"),
+                    json.toJson(exchange).getBytes(StandardCharsets.UTF_8));
+            recorded.increment();
+        } catch (IOException e) {
+            logger.warn("Unable to record {} {}", request.getMethod(), request.getUri(), e);
+        }
+    }
+
+    /** Find the recorded response to a request.
+     *
+     * @param request request sent by the browser
+     * @return a new response with the recorded status, headers and body, or null if nothing matches
+     */
+    @SuppressWarnings("unchecked")
+    public HttpResponse replay(HttpRequest request) {
+        String key = exactKey(request);
+        Map<String, Object> exchange = exact.get(key);
+        if (exchange == null) {
+            String method = request.getMethod().toString();
+            exchange = loose.get(looseKey(method, request.getUri(),
+                    key.substring((method + " " + request.getUri()).length()).trim()));
+            if (exchange == null) {
+                misses.add(request.getMethod() + " " + request.getUri());
+                return null;
+            }
+            looseHits.increment();
+            looseMatches.add(request.getMethod() + " " + request.getUri() + " -> " + exchange.get("url"));
+        } else {
+            hits.increment();
+        }
+        HttpResponse response = new HttpResponse().setStatus(((Number) exchange.get("status")).intValue());
+        for (List<String> header : (List<List<String>>) exchange.get("headers")) {
+            response.addHeader(header.get(0), header.get(1));
+        }
+        response.setContent(Contents.bytes(Base64.getDecoder().decode((String) exchange.get("body"))));
+        return response;
+    }
+
+    /** @return summary line and the requests replay could not answer, empty if the archive was not used */
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        if (recorded.sum() == 0 && hits.sum() == 0 && looseHits.sum() == 0 && misses.isEmpty()) {
+            return lines;
+        }
+        lines.add(String.format("Recorded %d, replayed %d exactly and %d without volatile parameters, missed %d"
+                + " requests (archive %s)", recorded.sum(), hits.sum(), looseHits.sum(), misses.size(), directory));
+        if (!misses.isEmpty()) {
+            lines.add("Missed:");
+            lines.addAll(new TreeSet<>(misses));
+        }
+        if (!looseMatches.isEmpty()) {
+            lines.add("Replayed without volatile parameters:");
+            lines.addAll(new TreeSet<>(looseMatches));
+        }
+        return lines;
+    }
+
+    private String exactKey(HttpRequest request) {
+        byte[] requestBody = Contents.bytes(request.getContent());
+        String key = request.getMethod() + " " + request.getUri();
+        return requestBody.length == 0 ? key : key + " " + NetworkHelper.sha1(new String(requestBody, StandardCharsets.UTF_8));
+    }
+
+    /** Method, URL without the volatile query parameters and request body hash. */
+    private String looseKey(String method, String url, String bodyHash) {
+        int query = url.indexOf('?');
+        StringBuilder key = new StringBuilder(method).append(' ').append(query < 0 ? url : url.substring(0, query));
+        if (query >= 0) {
+            int fragment = url.indexOf('#', query);
+            char separator = '?';
+            for (String param : url.substring(query + 1, fragment < 0 ? url.length() : fragment).split("&")) {
+                String name = param.contains("=") ? param.substring(0, param.indexOf('=')) : param;
+                if (!param.isEmpty() && !volatileParams.contains(name)) {
+                    key.append(separator).append(param);
+                    separator = '&';
+                }
+            }
+        }
+        return bodyHash.isEmpty() ? key.toString() : key + " " + bodyHash;
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "_" : host;
+        } catch (IllegalArgumentException e) {
+            return "_";
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.nagp.network;
+
+import java.util.Properties;
+
+/** How browser sessions use the network, configured with {@code networkMode}. */
+public enum NetworkMode {
+    /** Talk to the live site. */
+    OFF,
+    /** Talk to the live site and store every exchange in the network archive. */
+    RECORD,
+    /** Answer every request from the network archive without touching the network. */
+    REPLAY;
+
+    public static NetworkMode fromConfig(Properties configProps) {
+        String mode = configProps.getProperty("networkMode", "off").trim();
+        return mode.isEmpty() ? OFF : valueOf(mode.toUpperCase());
+    }
+}
@@ -0,0 +1,350 @@
+package org.nagp.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.json.Json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Disk backed, least recently used cache of HTTP responses used by {@link CachingProxy}.
+ *
+ * <p>Only responses a shared cache may keep are stored: 200s to GET requests without credentials,
+ * without {@code Set-Cookie}, {@code no-store} or {@code private}, and with an explicit lifetime
+ * or a validator. Freshness follows {@code s-maxage}, {@code max-age}, {@code Expires} and, for
+ * responses that only carry {@code Last-Modified}, a tenth of their age. Stale entries with an
+ * {@code ETag} or {@code Last-Modified} are revalidated instead of downloaded again.</p>
+ *
+ * <p>Each entry is a body file and a JSON metadata file named after the hash of the URL and the
+ * request's {@code Accept-Encoding}. Entries survive the JVM; once the cache is larger than its
+ * limit the least recently used ones are deleted.</p>
+ */
+public class ProxyCache {
+    private static final Logger logger = LogManager.getLogger(ProxyCache.class);
+    private static final Pattern MAX_AGE = Pattern.compile("(?:s-maxage|max-age)\\s*=\\s*\"?(\\d+)");
+    /** Bodies larger than this are passed through but not cached. */
+    private static final int MAX_ENTRY_BYTES = 32 * 1024 * 1024;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Json json = new Json();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder bytesFetched = new LongAdder();
+
+    /** A cached response. Headers are name/value pairs in their original order. */
+    public static class Entry {
+        final String key;
+        final String url;
+        final int status;
+        final List<String[]> headers;
+        final long size;
+        volatile long freshUntil;
+
+        Entry(String key, String url, int status, List<String[]> headers, long size, long freshUntil) {
+            this.key = key;
+            this.url = url;
+            this.status = status;
+            this.headers = headers;
+            this.size = size;
+            this.freshUntil = freshUntil;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public List<String[]> getHeaders() {
+            return headers;
+        }
+
+        public boolean isFresh() {
+            return System.currentTimeMillis() < freshUntil;
+        }
+
+        /** @return the value of the first header with the given name, or null */
+        public String header(String name) {
+            return NetworkHelper.header(headers, name);
+        }
+    }
+
+    public ProxyCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        load();
+    }
+
+    /** Cache key of a request.
+     *
+     * @param url absolute request URL
+     * @param acceptEncoding the request's Accept-Encoding header, may be null
+     * @return key of the entry the request can be answered from
+     */
+    public static String key(String url, String acceptEncoding) {
+        return NetworkHelper.sha1(url + "|" + (acceptEncoding == null ? "" : acceptEncoding));
+    }
+
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /** Read the body of an entry and count the hit.
+     *
+     * @param entry entry returned by {@link #get}
+     * @param wasRevalidated true if the origin confirmed the entry with a 304
+     * @return the cached body, or null if its file is gone
+     */
+    public byte[] serve(Entry entry, boolean wasRevalidated) {
+        try {
+            Path body = directory.resolve(entry.key + ".body");
+            byte[] bytes = Files.readAllBytes(body);
+            Files.setLastModifiedTime(body, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.increment();
+            if (wasRevalidated) {
+                revalidated.increment();
+            }
+            bytesSaved.add(bytes.length);
+            return bytes;
+        } catch (IOException e) {
+            remove(entry.key);
+            return null;
+        }
+    }
+
+    /** Extend the lifetime of an entry after the origin answered its revalidation with a 304.
+     *
+     * @param entry revalidated entry
+     * @param notModifiedHeaders headers of the 304 response
+     */
+    public void refresh(Entry entry, List<String[]> notModifiedHeaders) {
+        List<String[]> merged = new ArrayList<>(notModifiedHeaders);
+        for (String[] header : entry.headers) {
+            if (NetworkHelper.header(notModifiedHeaders, header[0]) == null) {
+                merged.add(header);
+            }
+        }
+        entry.freshUntil = System.currentTimeMillis() + freshnessMillis(merged);
+        writeMeta(entry);
+    }
+
+    /** Count a response fetched from the origin and store it if a shared cache may keep it.
+     *
+     * @param key cache key of the request
+     * @param url absolute request URL
+     * @param requestHeaders headers sent by the browser
+     * @param status response status
+     * @param responseHeaders response headers
+     * @param body response body as sent by the origin
+     */
+    public void store(String key, String url, List<String[]> requestHeaders, int status,
+                      List<String[]> responseHeaders, byte[] body) {
+        misses.increment();
+        bytesFetched.add(body.length);
+        if (!storable(requestHeaders, status, responseHeaders) || body.length > MAX_ENTRY_BYTES) {
+            return;
+        }
+        Entry entry = new Entry(key, url, status, responseHeaders, body.length,
+                System.currentTimeMillis() + freshnessMillis(responseHeaders));
+        try {
+            Files.createDirectories(directory);
+            // Replaced atomically: a parallel session may be serving the previous body right now
+            NetworkHelper.writeAtomically(directory.resolve(key + ".body"), body);
+            writeMeta(entry);
+        } catch (IOException e) {
+            logger.warn("Unable to cache {}", url, e);
+            return;
+        }
+        synchronized (this) {
+            Entry previous = entries.put(key, entry);
+            totalBytes += entry.size - (previous == null ? 0 : previous.size);
+            evict();
+        }
+    }
+
+    /** @return hit rate and transfer summary, empty if the proxy was not used */
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        long requests = hits.sum() + misses.sum();
+        if (requests == 0) {
+            return lines;
+        }
+        lines.add(String.format("Requests %d, cache hits %d (%.1f%%), revalidated %d, fetched %d",
+                requests, hits.sum(), 100.0 * hits.sum() / requests, revalidated.sum(), misses.sum()));
+        lines.add(String.format("Bytes served from cache %d, fetched from origin %d", bytesSaved.sum(),
+                bytesFetched.sum()));
+        synchronized (this) {
+            lines.add(String.format("Cache holds %d entries, %d bytes (limit %d) in %s", entries.size(), totalBytes,
+                    maxBytes, directory));
+        }
+        return lines;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    static boolean storable(List<String[]> requestHeaders, int status, List<String[]> responseHeaders) {
+        if (status != 200 || NetworkHelper.header(requestHeaders, "Authorization") != null
+                || NetworkHelper.header(responseHeaders, "Set-Cookie") != null) {
+            return false;
+        }
+        String cacheControl = lower(NetworkHelper.header(responseHeaders, "Cache-Control"));
+        String vary = lower(NetworkHelper.header(responseHeaders, "Vary"));
+        if (cacheControl.contains("no-store") || cacheControl.contains("private")
+                || !(vary.isEmpty() || vary.equals("accept-encoding"))) {
+            return false;
+        }
+        return MAX_AGE.matcher(cacheControl).find() || NetworkHelper.header(responseHeaders, "Expires") != null
+                || NetworkHelper.header(responseHeaders, "ETag") != null || NetworkHelper.header(responseHeaders, "Last-Modified") != null;
+    }
+
+    static long freshnessMillis(List<String[]> responseHeaders) {
+        String cacheControl = lower(NetworkHelper.header(responseHeaders, "Cache-Control"));
+        if (cacheControl.contains("no-cache") || cacheControl.contains("must-revalidate")
+                && cacheControl.contains("max-age=0")) {
+            return 0;
+        }
+        Matcher maxAge = MAX_AGE.matcher(cacheControl);
+        if (maxAge.find()) {
+            return Long.parseLong(maxAge.group(1)) * 1000;
+        }
+        long date = httpDate(NetworkHelper.header(responseHeaders, "Date"), System.currentTimeMillis());
+        long expires = httpDate(NetworkHelper.header(responseHeaders, "Expires"), -1);
+        if (NetworkHelper.header(responseHeaders, "Expires") != null) {
+            return Math.max(0, expires - date);
+        }
+        long lastModified = httpDate(NetworkHelper.header(responseHeaders, "Last-Modified"), -1);
+        return lastModified < 0 ? 0 : Math.max(0, (date - lastModified) / 10);
+    }
+
+    private static String lower(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static long httpDate(String value, long fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value.trim()).getTime();
+        } catch (ParseException e) {
+            return fallback;
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            totalBytes -= entry.size;
+            deleteFiles(key);
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            totalBytes -= entry.size;
+            deleteFiles(entry.key);
+        }
+    }
+
+    private void deleteFiles(String key) {
+        try {
+            Files.deleteIfExists(directory.resolve(key + ".body"));
+            Files.deleteIfExists(directory.resolve(key + ".json"));
+        } catch (IOException e) {
+            logger.debug("Unable to delete cache entry {}", key, e);
+        }
+    }
+
+    private void writeMeta(Entry entry) {
+        Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put("url", entry.url);
+        meta.put("status", entry.status);
+        List<List<String>> headers = new ArrayList<>();
+        for (String[] header : entry.headers) {
+            headers.add(Arrays.asList(header));
+        }
+        meta.put("headers", headers);
+        meta.put("size", entry.size);
+        meta.put("freshUntil", entry.freshUntil);
+        try {
+            NetworkHelper.writeAtomically(directory.resolve(entry.key + ".json"),
+                    json.toJson(meta).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.warn("Unable to write cache metadata of {}", entry.url, e);
+        }
+    }
+
+    /** Rebuild the index from disk, least recently used entries first. */
+    @SuppressWarnings("unchecked")
+    private synchronized void load() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> bodies = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.body")) {
+            files.forEach(bodies::add);
+        } catch (IOException e) {
+            logger.warn("Unable to read the proxy cache {}", directory, e);
+            return;
+        }
+        bodies.sort(Comparator.comparingLong(body -> body.toFile().lastModified()));
+        for (Path body : bodies) {
+            String key = body.getFileName().toString().replace(".body", "");
+            try (Reader reader = Files.newBufferedReader(directory.resolve(key + ".json"), StandardCharsets.UTF_8)) {
+                Map<String, Object> meta = json.toType(reader, Json.MAP_TYPE);
+                List<String[]> headers = new ArrayList<>();
+                for (List<String> header : (List<List<String>>) meta.get("headers")) {
+                    headers.add(header.toArray(new String[0]));
+                }
+                Entry entry = new Entry(key, (String) meta.get("url"), ((Number) meta.get("status")).intValue(),
+                        headers, ((Number) meta.get("size")).longValue(),
+                        ((Number) meta.get("freshUntil")).longValue());
+                entries.put(key, entry);
+                totalBytes += entry.size;
+            } catch (IOException | RuntimeException e) {
+                deleteFiles(key);
+            }
+        }
+        evict();
+        logger.info("Proxy cache {} holds {} entries, {} bytes", directory, entries.size(), totalBytes);
+    }
+}
@@ -0,0 +1,76 @@
+package org.nagp.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.devtools.HasDevTools;
+import org.openqa.selenium.devtools.NetworkInterceptor;
+import org.openqa.selenium.remote.http.Contents;
+import org.openqa.selenium.remote.http.Filter;
+import org.openqa.selenium.remote.http.HttpResponse;
+
+/**
+ * Records the browser's HTTP traffic into the {@link NetworkArchive}, or replays it from there.
+ *
+ * <p>Requests are intercepted through the DevTools Fetch domain. In record mode they go to the
+ * live site and each response is stored on the way back. In replay mode the archive answers
+ * every request before it reaches the network, which makes runs deterministic and independent of
+ * the site's latency; requests that were never recorded get an empty 404 and are listed in
+ * network-archive.txt at the end of the suite. Mocked responses are neither recorded nor
+ * replayed.</p>
+ */
+public final class RecordReplay {
+    private static final Logger logger = LogManager.getLogger(RecordReplay.class);
+
+    private RecordReplay() {
+    }
+
+    /** Start intercepting the traffic of a browser session. A session has a single interceptor, so
+     * other filters such as {@link BackendMocks} run in front of recording or replay.
+     *
+     * @param driver undecorated driver of the session
+     * @param mode configured network mode
+     * @param before filter that sees requests first, may be null
+     * @return the interceptor, closed by quitting the session, or null if nothing was installed
+     */
+    public static NetworkInterceptor install(WebDriver driver, NetworkMode mode, Filter before) {
+        if (mode == NetworkMode.OFF && before == null) {
+            return null;
+        }
+        if (!(driver instanceof HasDevTools)) {
+            logger.warn("Network mode {} and backend mocks need a browser with DevTools; using the live site", mode);
+            return null;
+        }
+        Filter filter = null;
+        if (mode != NetworkMode.OFF) {
+            NetworkArchive archive = NetworkArchive.getInstance();
+            filter = mode == NetworkMode.RECORD ? record(archive) : replay(archive);
+            logger.info("Network mode {} for this session", mode);
+        }
+        if (before != null) {
+            filter = filter == null ? before : before.andThen(filter);
+        }
+        return new NetworkInterceptor(driver, filter);
+    }
+
+    private static Filter record(NetworkArchive archive) {
+        return next -> request -> {
+            HttpResponse response = next.execute(request);
+            byte[] body = Contents.bytes(response.getContent());
+            response.setContent(Contents.bytes(body));
+            archive.record(request, response, body);
+            return response;
+        };
+    }
+
+    private static Filter replay(NetworkArchive archive) {
+        return next -> request -> {
+            HttpResponse response = archive.replay(request);
+            if (response == null) {
+                logger.debug("Not in the network archive: {} {}", request.getMethod(), request.getUri());
+                return new HttpResponse().setStatus(404).setContent(Contents.empty());
+            }
+            return response;
+        };
+    }
+}
@@ -0,0 +1,27 @@
+package org.nagp.network;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Answers the backend calls of a test, or of every test in a class, from a mock fixture instead
+ * of the real endpoints while {@code mockBackend} is on. See {@link BackendMocks}.
+ *
+ * <p>Annotate a test, run it with {@code networkMode=record} to capture the fixture and commit the
+ * captured file before relying on it; a fixture that does not exist leaves the test on the real
+ * endpoints.</p>
+ *
+ * <pre>
+ *   &#64;UseMocks("busSearch")
+ *   &#64;Test
+ *   public void verifyUserCanSearchForBusesBetweenTwoPlaces() { ... }
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface UseMocks {
+    /** Fixture file under resources/mocks, with or without the .xml extension. */
+    String value();
+}
@@ -6,7 +6,6 @@ import org.nagp.framework.WebElements;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.FindBy;
-import org.openqa.selenium.support.PageFactory;
 
 import java.util.NoSuchElementException;
 
@@ -19,7 +18,7 @@ public class BusSearchResultPage extends WebElements {
 
     public BusSearchResultPage(WebDriver driver) {
         this.driver= driver;
-        PageFactory.initElements(driver,this);
+        initElements(driver);
     }
 
     public boolean isOpen(WebDriver driverParallel) {
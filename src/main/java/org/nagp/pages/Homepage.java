@@ -4,14 +4,16 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nagp.framework.Helper;
 import org.nagp.framework.WebElements;
+import org.nagp.navigation.PageRoute;
+import org.nagp.navigation.Transition;
 import org.nagp.utils.WaitTool;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.FindBy;
-import org.openqa.selenium.support.PageFactory;
 
 import java.util.NoSuchElementException;
 
+@PageRoute(path = "", urlPattern = "^https?://[^/]+/?([?#].*)?$")
 public class Homepage extends WebElements {
     WebDriver driver;
     private static final Logger logger = LogManager.getLogger(Homepage.class);
@@ -45,7 +47,7 @@ public class Homepage extends WebElements {
     WebElement upperTagline;
     public Homepage(WebDriver driver) {
         this.driver= driver;
-        PageFactory.initElements(driver,this);
+        initElements(driver);
     }
 
     public boolean isOpen(WebDriver driverParallel) {
@@ -59,6 +61,7 @@ public class Homepage extends WebElements {
         return isOpen;
     }
 
+    @Transition
     public TrainTicketPage clickTrainPage(WebDriver driver){
         logger.info("Clicking on Trains Page...");
         trainPageLink.click();
@@ -87,7 +90,7 @@ public class Homepage extends WebElements {
     public void selectDateForBusTravel(){
         logger.info("Clicking on Date Button");
         int currentDate = helper.getCurrentDateOnly();
-        if(!isElementPresent("//span[contains(@class,'DayTiles__CalendarDaysSpan') and text()='xxx']".replace("xxx",String.valueOf(currentDate+1)),driver)){
+        if(isElementAbsent("//span[contains(@class,'DayTiles__CalendarDaysSpan') and text()='xxx']".replace("xxx",String.valueOf(currentDate+1)),driver)){
             dateButton.click();
         }
         getElementByXpathAndClick("//span[contains(@class,'DayTiles__CalendarDaysSpan') and text()='xxx']".replace("xxx",String.valueOf(currentDate+1)),driver);
@@ -96,7 +99,7 @@ public class Homepage extends WebElements {
     public void selectDateForBusTravel(int days){
         logger.info("Clicking on Date Button");
         int currentDate = helper.getDateOnlyTPlusMinus(days);
-        if(!isElementPresent("//span[contains(@class,'DayTiles__CalendarDaysSpan') and text()='xxx']".replace("xxx",String.valueOf(currentDate+1)),driver)){
+        if(isElementAbsent("//span[contains(@class,'DayTiles__CalendarDaysSpan') and text()='xxx']".replace("xxx",String.valueOf(currentDate+1)),driver)){
             dateButton.click();
         }
         getElementByXpathAndClick("//span[contains(@class,'DayTiles__CalendarDaysSpan') and text()='xxx']".replace("xxx",String.valueOf(currentDate+1)),driver);
@@ -108,6 +111,7 @@ public class Homepage extends WebElements {
         return new BusSearchResultPage(driver);
     }
 
+    @Transition(newWindow = true)
     public HelpPage clickOnHelpButton(WebDriver driver){
         logger.info("Clicking on Help button");
         help.click();
@@ -4,16 +4,18 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nagp.dataProvider.Constants;
 import org.nagp.framework.WebElements;
+import org.nagp.navigation.PageRoute;
+import org.nagp.navigation.Transition;
 import org.nagp.utils.WaitTool;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.FindBy;
-import org.openqa.selenium.support.PageFactory;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 
+@PageRoute(path = "railways")
 public class TrainTicketPage extends WebElements {
     WebDriver driver;
     private static final Logger logger = LogManager.getLogger(TrainTicketPage.class);
@@ -49,7 +51,7 @@ public class TrainTicketPage extends WebElements {
     WebElement prevSearch;
     public TrainTicketPage(WebDriver driver) {
         this.driver= driver;
-        PageFactory.initElements(driver,this);
+        initElements(driver);
     }
 
     public boolean isOpen(WebDriver driverParallel) {
@@ -63,6 +65,7 @@ public class TrainTicketPage extends WebElements {
         return isOpen;
     }
 
+    @Transition
     public Homepage clickBusBookingPage(WebDriver driver){
         logger.info("Clicking on Bus Booking Page Page...");
         BusPageLink.click();
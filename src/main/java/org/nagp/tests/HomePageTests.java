@@ -48,10 +48,9 @@ public class HomePageTests extends TestDriver {
     @BeforeMethod(alwaysRun = true)
     private void start(ITestResult iTestResult, Method method) {
         iTestResult.setAttribute("webDriver", testDriver.getWebDriver());
-        testDriver.getWebDriver().navigate().refresh();
-        String url = configProps.getProperty("webHost");
-        testDriver.getWebDriver().get(url);
+        testDriver.useMocks(method);
         testDriver.getWebDriver().manage().window().maximize();
+        testDriver.startOn(method);
     }
 
     @Test(description = "Verify User can toggle between Bus and Train tickets", groups = {"regression"})
@@ -107,11 +106,7 @@ public class HomePageTests extends TestDriver {
     }
 
     @AfterMethod(alwaysRun = true)
-    public void goBackToHomePage() throws Exception {
-        String url = configProps.getProperty("webHost");
-        testDriver.getWebDriver().manage().deleteAllCookies();
-        testDriver.getWebDriver().navigate().to(url);
-
+    public void checkBrowserConsoleLogs() throws Exception {
         if (configProps.getProperty("consoleLogging").equalsIgnoreCase("true")) {
             List<LogEntry> logs = testDriver.getBrowserConsoleLogs(testDriver.getWebDriver());
             if (!logs.isEmpty()) {
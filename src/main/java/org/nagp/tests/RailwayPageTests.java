@@ -7,6 +7,7 @@ import org.nagp.dataProvider.ExcelHelper;
 import org.nagp.dataProvider.TestDataReader;
 import org.nagp.framework.Helper;
 import org.nagp.framework.TestDriver;
+import org.nagp.navigation.StartsOn;
 import org.nagp.pages.BusSearchResultPage;
 import org.nagp.pages.HelpPage;
 import org.nagp.pages.Homepage;
@@ -17,6 +18,7 @@ import org.testng.Assert;
 import org.testng.ITestResult;
 import org.testng.annotations.*;
 
+import java.lang.reflect.Method;
 import java.util.*;
 
 import static org.testng.Assert.assertTrue;
@@ -44,12 +46,11 @@ public class RailwayPageTests extends TestDriver{
      * Execute this method at the start of each test case.
      */
     @BeforeMethod(alwaysRun = true)
-    private void start(ITestResult iTestResult) {
+    private void start(ITestResult iTestResult, Method method) {
         iTestResult.setAttribute("webDriver", testDriver.getWebDriver());
-        testDriver.getWebDriver().navigate().refresh();
-        String url = configProps.getProperty("webHost");
-        testDriver.getWebDriver().get(url);
+        testDriver.useMocks(method);
         testDriver.getWebDriver().manage().window().maximize();
+        testDriver.startOn(method);
     }
 
     //Test with data reading from Excel
@@ -63,36 +64,33 @@ public class RailwayPageTests extends TestDriver{
         assertTrue(trainTicketPage.getRailwayOperationsText(testDriver.getWebDriver()).containsAll(colData),"Mismatch in Railway Sections");
     }
 
+    @StartsOn(value = TrainTicketPage.class, state = "trainsTab")
     @Test(description = "Verify User gets error on invalid PNR entered", groups = {"regression","smoke"})
     public void verifyUserGetsErrorOnInvalidPNR() {
         testData = TestDataReader.getDataMap("verifyUserGetsErrorOnInvalidPNR");
-        home= new Homepage(testDriver.getWebDriver());
-        Assert.assertTrue(home.isOpen(testDriver.getWebDriver()),"HomePage is not opened");
-        trainTicketPage = home.clickTrainPage(testDriver.getWebDriver());
+        trainTicketPage = new TrainTicketPage(testDriver.getWebDriver());
         Assert.assertTrue(trainTicketPage.isOpen(testDriver.getWebDriver()),"Train Page is not opened");
         trainTicketPage.clickOnCheckPNRStatusButton();
         trainTicketPage.enterPnrNumberAndClickSearch(testData.get("pnr"));
         Assert.assertEquals(trainTicketPage.getPNRErrorText(testDriver.getWebDriver()),testData.get("errorMessage"),"Mismatch in Error Message");
     }
 
+    @StartsOn(value = TrainTicketPage.class, state = "trainsTab")
     @Test(description = "Verify User can search and see live train status", groups = {"regression"})
     public void verifyUserCanSearchForLiveTrain() {
         testData = TestDataReader.getDataMap("verifyUserCanSearchForLiveTrain");
-        home= new Homepage(testDriver.getWebDriver());
-        Assert.assertTrue(home.isOpen(testDriver.getWebDriver()),"HomePage is not opened");
-        trainTicketPage = home.clickTrainPage(testDriver.getWebDriver());
+        trainTicketPage = new TrainTicketPage(testDriver.getWebDriver());
         Assert.assertTrue(trainTicketPage.isOpen(testDriver.getWebDriver()),"Train Page is not opened");
         trainTicketPage.clickOnLiveTrainStatusButton();
         trainTicketPage.enterTrainNumberAndClickSearch(testData.get("trainNumber"),testDriver.getWebDriver());
         assertTrue(trainTicketPage.checkLiveTrainStatusPageIsVisible(testDriver.getWebDriver()),"Live Train Page not visible");
     }
 
+    @StartsOn(value = TrainTicketPage.class, state = "trainsTab")
     @Test(description = "Verify User can search and see live train History", groups = {"regression","smoke"})
     public void verifyUserCanSeeLiveTrainHistory() {
         testData = TestDataReader.getDataMap("verifyUserCanSearchForLiveTrain");
-        home= new Homepage(testDriver.getWebDriver());
-        Assert.assertTrue(home.isOpen(testDriver.getWebDriver()),"HomePage is not opened");
-        trainTicketPage = home.clickTrainPage(testDriver.getWebDriver());
+        trainTicketPage = new TrainTicketPage(testDriver.getWebDriver());
         Assert.assertTrue(trainTicketPage.isOpen(testDriver.getWebDriver()),"Train Page is not opened");
         trainTicketPage.clickOnLiveTrainStatusButton();
         trainTicketPage.enterTrainNumberAndClickSearch(testData.get("trainNumber"),testDriver.getWebDriver());
@@ -102,9 +100,7 @@ public class RailwayPageTests extends TestDriver{
     }
 
     @AfterMethod(alwaysRun = true)
-    public void goBackToHomePage() throws Exception {
-        String url = configProps.getProperty("webHost");
-        testDriver.getWebDriver().navigate().to(url);
+    public void checkBrowserConsoleLogs() throws Exception {
         if (configProps.getProperty("consoleLogging").equalsIgnoreCase("true")) {
             List<LogEntry> logs = testDriver.getBrowserConsoleLogs(testDriver.getWebDriver());
             if (!logs.isEmpty()) {
@@ -0,0 +1,284 @@
+package org.nagp.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nagp.dataProvider.Constants;
+import org.nagp.framework.Helper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packs the previous run's CurrentTestResults folder into one zip file inside ArchivedTestResults.
+ *
+ * <p>Starting a suite only costs a directory rename: the folder is moved aside into a staging
+ * directory and compression happens on a background thread. Archives are written to a temporary
+ * file and moved into place atomically, so a half written zip is never picked up. An index file
+ * lists every archive and the retention limits from config.properties are applied after each one.</p>
+ *
+ * <p>If the JVM exits before a staging directory has been packed it is picked up by the next run.</p>
+ */
+public class ResultsArchiver {
+    private static final Logger logger = LogManager.getLogger(ResultsArchiver.class);
+
+    static final String INDEX_FILE_NAME = "archive-index.tsv";
+    private static final String STAGING_PREFIX = ".staging-";
+    private static final String ARCHIVE_PREFIX = "TestResults_";
+    private static final String ARCHIVE_SUFFIX = ".zip";
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private static final ThreadPoolExecutor archiveExecutor = new ThreadPoolExecutor(1, 1, 0L,
+            TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "results-archiver");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Path currentResultsFolder;
+    private final Path archiveFolder;
+    private final int retentionCount;
+    private final long retentionMillis;
+    private final long retentionBytes;
+
+    public ResultsArchiver() {
+        this(Paths.get(Constants.UPLOAD_PATH, "CurrentTestResults"),
+                Paths.get(Constants.UPLOAD_PATH, "ArchivedTestResults"),
+                new Helper().readConfig());
+    }
+
+    public ResultsArchiver(Path currentResultsFolder, Path archiveFolder, Properties configProps) {
+        this.currentResultsFolder = currentResultsFolder;
+        this.archiveFolder = archiveFolder;
+        this.retentionCount = Integer.parseInt(configProps.getProperty("archiveRetentionCount", "0").trim());
+        this.retentionMillis = TimeUnit.DAYS.toMillis(
+                Long.parseLong(configProps.getProperty("archiveRetentionDays", "0").trim()));
+        this.retentionBytes = Long.parseLong(configProps.getProperty("archiveRetentionMaxMb", "0").trim())
+                * 1024L * 1024L;
+    }
+
+    /** Moves the current results aside and schedules them to be zipped in the background.
+     *
+     * @return future completing once the archive and retention pass are done
+     */
+    public synchronized Future<?> archiveCurrentResults() {
+        try {
+            Files.createDirectories(archiveFolder);
+            if (Files.isDirectory(currentResultsFolder) && !isEmpty(currentResultsFolder)) {
+                String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS").format(new Date());
+                Path staging = archiveFolder.resolve(STAGING_PREFIX + stamp);
+                moveAtomically(currentResultsFolder, staging);
+                logger.info("Moved {} to {} for archiving", currentResultsFolder, staging);
+            }
+            Files.createDirectories(currentResultsFolder);
+        } catch (IOException e) {
+            logger.error("Unable to stage current test results for archiving", e);
+            return CompletableFuture.completedFuture(null);
+        }
+        return archiveExecutor.submit(this::packStagedResults);
+    }
+
+    /** Returns the number of archive jobs that have not completed yet. */
+    public static int pendingArchives() {
+        return archiveExecutor.getQueue().size() + archiveExecutor.getActiveCount();
+    }
+
+    private void packStagedResults() {
+        try {
+            deleteLeftoverPartials();
+            for (Path staging : listStagingFolders()) {
+                pack(staging);
+            }
+            applyRetention();
+        } catch (IOException e) {
+            logger.error("Archiving test results failed", e);
+        }
+    }
+
+    private void pack(Path staging) throws IOException {
+        String stamp = staging.getFileName().toString().substring(STAGING_PREFIX.length());
+        Path archive = archiveFolder.resolve(ARCHIVE_PREFIX + stamp + ARCHIVE_SUFFIX);
+        Path partial = archiveFolder.resolve(archive.getFileName() + PARTIAL_SUFFIX);
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(staging, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(partial))) {
+            for (Path file : files) {
+                // Zip entry names always use '/' regardless of the platform separator.
+                zip.putNextEntry(new ZipEntry(staging.relativize(file).toString().replace('\\', '/')));
+                Files.copy(file, zip);
+                zip.closeEntry();
+            }
+        }
+        moveAtomically(partial, archive);
+        appendToIndex(archive, files.size());
+        deleteRecursively(staging);
+        logger.info("Archived {} result files into {}", files.size(), archive);
+    }
+
+    /** Deletes archives beyond the configured count, age and total size limits, oldest first. */
+    private void applyRetention() throws IOException {
+        List<Path> archives = listArchives();
+        archives.sort(Comparator.comparingLong((Path archive) -> lastModified(archive)).reversed());
+        long now = System.currentTimeMillis();
+        long keptBytes = 0;
+        List<Path> kept = new ArrayList<>();
+        for (Path archive : archives) {
+            long size = Files.size(archive);
+            boolean overCount = retentionCount > 0 && kept.size() >= retentionCount;
+            boolean overAge = retentionMillis > 0 && now - lastModified(archive) > retentionMillis;
+            boolean overSize = retentionBytes > 0 && keptBytes + size > retentionBytes && !kept.isEmpty();
+            if (overCount || overAge || overSize) {
+                Files.deleteIfExists(archive);
+                logger.info("Removed archive {} (retention policy)", archive.getFileName());
+            } else {
+                kept.add(archive);
+                keptBytes += size;
+            }
+        }
+        rewriteIndex(kept);
+    }
+
+    private void appendToIndex(Path archive, int entries) throws IOException {
+        Path index = archiveFolder.resolve(INDEX_FILE_NAME);
+        boolean newIndex = !Files.exists(index);
+        try (BufferedWriter writer = Files.newBufferedWriter(index, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (newIndex) {
+                writer.write(indexHeader());
+                writer.newLine();
+            }
+            writer.write(indexLine(archive, entries));
+            writer.newLine();
+        }
+    }
+
+    /** Rewrites the index so it lists exactly the archives that survived retention. */
+    private void rewriteIndex(List<Path> kept) throws IOException {
+        Path index = archiveFolder.resolve(INDEX_FILE_NAME);
+        List<String> lines = new ArrayList<>();
+        lines.add(indexHeader());
+        if (Files.exists(index)) {
+            for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                String name = line.split("\t", 2)[0];
+                for (Path archive : kept) {
+                    if (archive.getFileName().toString().equals(name)) {
+                        lines.add(line);
+                        break;
+                    }
+                }
+            }
+        }
+        Path partial = archiveFolder.resolve(INDEX_FILE_NAME + PARTIAL_SUFFIX);
+        Files.write(partial, lines, StandardCharsets.UTF_8);
+        moveAtomically(partial, index);
+    }
+
+    private String indexHeader() {
+        return "archive\tcreated\tfiles\tbytes";
+    }
+
+    private String indexLine(Path archive, int entries) throws IOException {
+        return archive.getFileName() + "\t" + new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date())
+                + "\t" + entries + "\t" + Files.size(archive);
+    }
+
+    private List<Path> listStagingFolders() throws IOException {
+        List<Path> folders = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(archiveFolder, STAGING_PREFIX + "*")) {
+            for (Path path : stream) {
+                if (Files.isDirectory(path)) {
+                    folders.add(path);
+                }
+            }
+        }
+        folders.sort(Comparator.naturalOrder());
+        return folders;
+    }
+
+    private List<Path> listArchives() throws IOException {
+        List<Path> archives = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(archiveFolder,
+                ARCHIVE_PREFIX + "*" + ARCHIVE_SUFFIX)) {
+            for (Path path : stream) {
+                archives.add(path);
+            }
+        }
+        return archives;
+    }
+
+    private void deleteLeftoverPartials() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(archiveFolder, "*" + PARTIAL_SUFFIX)) {
+            for (Path path : stream) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static boolean isEmpty(Path folder) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            return !stream.iterator().hasNext();
+        }
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            logger.warn("Atomic move not supported for {}, falling back to a plain move", source);
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteRecursively(Path folder) throws IOException {
+        Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
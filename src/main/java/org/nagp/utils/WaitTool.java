@@ -2,6 +2,14 @@ package org.nagp.utils;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.nagp.framework.DeadlineWait;
+import org.nagp.framework.Helper;
+import org.nagp.framework.LocatorCompiler;
+import org.nagp.framework.TestDeadline;
+import org.nagp.history.LocatorTimings;
+import org.nagp.metrics.FrameworkEvents;
+import org.nagp.metrics.TraceTimeline;
+import org.nagp.metrics.WaitAttribution;
 import org.openqa.selenium.*;
 import org.openqa.selenium.support.ui.ExpectedCondition;
 import org.openqa.selenium.support.ui.ExpectedConditions;
@@ -36,6 +44,115 @@ public class WaitTool {
    */
   public static final int DEFAULT_WAIT_4_PAGE = 12;
 
+  /** Requests in flight for longer than this (long polls, beacons) do not keep a page from settling. */
+  private static final long SETTLE_MAX_REQUEST_MILLIS = Long.parseLong(
+      new Helper().readConfig().getProperty("settleMaxRequestMillis", "5000").trim());
+
+  /**
+   * Async script resolving once the page is settled: document loaded, no fetch/XHR in flight for
+   * less than arguments[2] ms and no DOM mutation or finished resource load for arguments[0] ms.
+   * Resolves false after arguments[1] ms. The fetch/XHR tracking is installed on the first call and
+   * lives as long as the document; a send or fetch that throws is untracked right away.
+   */
+  private static final String PAGE_SETTLED_SCRIPT =
+      "var quietMs = arguments[0], timeoutMs = arguments[1], maxRequestMs = arguments[2],"
+      + "    done = arguments[arguments.length - 1];"
+      + "if (window.__nagpRequests === undefined) {"
+      + "  window.__nagpRequests = {};"
+      + "  var nextRequest = 0;"
+      + "  var track = function () {"
+      + "    var id = ++nextRequest;"
+      + "    window.__nagpRequests[id] = Date.now();"
+      + "    return function () { delete window.__nagpRequests[id]; };"
+      + "  };"
+      + "  var originalSend = XMLHttpRequest.prototype.send;"
+      + "  XMLHttpRequest.prototype.send = function () {"
+      + "    var untrack = track();"
+      + "    this.addEventListener('loadend', untrack);"
+      + "    try { return originalSend.apply(this, arguments); } catch (e) { untrack(); throw e; }"
+      + "  };"
+      + "  if (window.fetch) {"
+      + "    var originalFetch = window.fetch;"
+      + "    window.fetch = function () {"
+      + "      var untrack = track();"
+      + "      try { return originalFetch.apply(this, arguments).finally(untrack); }"
+      + "      catch (e) { untrack(); throw e; }"
+      + "    };"
+      + "  }"
+      + "}"
+      + "function pending(now) {"
+      + "  var count = 0;"
+      + "  for (var id in window.__nagpRequests) {"
+      + "    if (now - window.__nagpRequests[id] < maxRequestMs) { count++; }"
+      + "  }"
+      + "  return count;"
+      + "}"
+      + "var start = Date.now(), lastChange = Date.now();"
+      + "var resources = performance.getEntriesByType('resource').length;"
+      + "var observer = new MutationObserver(function () { lastChange = Date.now(); });"
+      + "observer.observe(document, {childList: true, subtree: true, attributes: true, characterData: true});"
+      + "(function check() {"
+      + "  var now = Date.now(), loaded = performance.getEntriesByType('resource').length;"
+      + "  if (loaded !== resources) { resources = loaded; lastChange = now; }"
+      + "  var idle = document.readyState === 'complete' && pending(now) === 0;"
+      + "  if (idle && now - lastChange >= quietMs) { observer.disconnect(); done(true); }"
+      + "  else if (now - start >= timeoutMs) { observer.disconnect(); done(false); }"
+      + "  else { setTimeout(check, 50); }"
+      + "})();";
+
+  /**
+   * Async script resolving true once arguments[0] keeps the same bounding box (page coordinates)
+   * for arguments[1] consecutive animation frames. A ResizeObserver restarts the count on any resize
+   * between frames. Resolves false after arguments[2] ms or when the element leaves the document.
+   */
+  private static final String ELEMENT_STABLE_SCRIPT =
+      "var element = arguments[0], frames = arguments[1], timeoutMs = arguments[2],"
+      + "    done = arguments[arguments.length - 1];"
+      + "var stable = 0, last = null, finished = false;"
+      + "var observer = window.ResizeObserver ? new ResizeObserver(function () { stable = 0; }) : null;"
+      + "if (observer) { observer.observe(element); }"
+      + "function finish(result) {"
+      + "  if (finished) { return; }"
+      + "  finished = true;"
+      + "  if (observer) { observer.disconnect(); }"
+      + "  done(result);"
+      + "}"
+      + "function frame() {"
+      + "  if (finished) { return; }"
+      + "  if (!element.isConnected) { finish(false); return; }"
+      + "  var r = element.getBoundingClientRect();"
+      + "  var box = [r.left + window.scrollX, r.top + window.scrollY, r.width, r.height].join(',');"
+      + "  stable = box === last ? stable + 1 : 0;"
+      + "  last = box;"
+      + "  if (stable >= frames) { finish(true); } else { requestAnimationFrame(frame); }"
+      + "}"
+      + "setTimeout(function () { finish(false); }, timeoutMs);"
+      + "requestAnimationFrame(frame);";
+
+  /**
+   * Describes the locator behind a WebElement so its appearance time can be learned.
+   * PageFactory proxies and remote elements both print their locator in toString().
+   *
+   * @param element element, usually a PageFactory proxy
+   * @return locator description in By.toString() form, e.g. "By.xpath: //div"
+   */
+  public static String locatorOf(WebElement element) {
+    String description = String.valueOf(element);
+    int proxyLocator = description.indexOf("'By.");
+    if (proxyLocator >= 0 && description.endsWith("'")) {
+      return description.substring(proxyLocator + 1, description.length() - 1);
+    }
+    int remoteLocator = description.lastIndexOf("-> ");
+    if (remoteLocator >= 0 && description.endsWith("]")) {
+      return "By." + description.substring(remoteLocator + 3, description.length() - 1);
+    }
+    return description;
+  }
+
+  private static long millisSince(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
   /**
    * Wait for the element to be present in the DOM, and displayed on the page.
    * And returns the first WebElement using the given method.
@@ -53,7 +170,7 @@ public class WaitTool {
       //Because implicitlyWait time also set "driver.findElement()" wait time.
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0)); //nullify implicitlyWait()
 
-      WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeOutInSeconds));
+      WebDriverWait wait = new DeadlineWait(driver, Duration.ofSeconds(timeOutInSeconds), "waitForElement " + by);
       //element = wait.until(ExpectedConditions.visibilityOfElementLocated(by));
       element = wait.until(x -> x.findElement(by));
 
@@ -80,16 +197,26 @@ public class WaitTool {
       int timeOutInSeconds) {
     WebElement element = null;
     List<WebElement> elements;
-    driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(DEFAULT_WAIT_4_PAGE));
+    int timeout = LocatorTimings.getInstance().timeoutSeconds(by.toString(), timeOutInSeconds);
+    //nullify implicitlyWait() so that the explicit (possibly learned) timeout is the one honoured
+    driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(0));
+    long start = System.nanoTime();
     try {
-      WebDriverWait wait = (WebDriverWait) new WebDriverWait(driver, Duration.ofSeconds(timeOutInSeconds)).ignoring(StaleElementReferenceException.class);
-      elements = wait.until(x -> x.findElements(by));
-      if (!elements.isEmpty()) {
-        element = elements.get(0);
-      }
+      WebDriverWait wait = (WebDriverWait) new DeadlineWait(driver, Duration.ofSeconds(timeout),
+          "waitForElementPresent " + by).ignoring(StaleElementReferenceException.class);
+      elements = wait.until(x -> {
+        List<WebElement> found = x.findElements(by);
+        return found.isEmpty() ? null : found;
+      });
+      element = elements.get(0);
+      LocatorTimings.getInstance().recordAppearance(by.toString(), millisSince(start));
       //reset implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(DEFAULT_WAIT_4_PAGE));
     } catch (Exception e) {
+      driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(DEFAULT_WAIT_4_PAGE));
+      if (e instanceof TimeoutException) {
+        LocatorTimings.getInstance().recordTimeout(by.toString(), millisSince(start));
+      }
       log.error("Unable to load element -- ", e);
      // Screenshot.addScreenshotFileName(driver,"waitForElement_"+System.currentTimeMillis());
       return element;
@@ -111,12 +238,18 @@ public class WaitTool {
   public static WebElement waitForElementClickable(WebDriver driver, final By by, int timeOutInSeconds)
   {
     WebElement element = null;
+    long start = System.nanoTime();
     try
     {
-      WebDriverWait wait = (WebDriverWait) new WebDriverWait(driver, Duration.ofSeconds(timeOutInSeconds)).ignoring(StaleElementReferenceException.class);
+      int timeout = LocatorTimings.getInstance().timeoutSeconds(by.toString(), timeOutInSeconds);
+      WebDriverWait wait = (WebDriverWait) new DeadlineWait(driver, Duration.ofSeconds(timeout)).ignoring(StaleElementReferenceException.class);
       element = wait.until(ExpectedConditions.elementToBeClickable(by));
+      LocatorTimings.getInstance().recordAppearance(by.toString(), millisSince(start));
     }
     catch (Exception e) {
+      if (e instanceof TimeoutException) {
+        LocatorTimings.getInstance().recordTimeout(by.toString(), millisSince(start));
+      }
       log.error("Unable to load element -- ", e);
       // Screenshot.addScreenshotFileName(driver,"waitForElement_"+System.currentTimeMillis());
       return element;
@@ -138,7 +271,7 @@ public class WaitTool {
    */
   public static WebElement waitForElementPresentByXpath(WebDriver driver, String locator,
       int timeOutInSeconds) {
-    return waitForElementPresent(driver, By.xpath(locator), timeOutInSeconds);
+    return waitForElementPresent(driver, LocatorCompiler.compile(locator), timeOutInSeconds);
   }
 
   /**
@@ -153,7 +286,7 @@ public class WaitTool {
    *         (if the timeout is reached)
    */
   public static WebElement waitForElementPresentByXpath(WebDriver driver, String locator) {
-    return waitForElementPresent(driver, By.xpath(locator), DEFAULT_WAIT_4_ELEMENT);
+    return waitForElementPresent(driver, LocatorCompiler.compile(locator), DEFAULT_WAIT_4_ELEMENT);
   }
   /**
    * Wait for the element identified by Xpath to be present in the DOM,
@@ -168,12 +301,20 @@ public class WaitTool {
    *         (if the timeout is reached)
    */
   public static WebElement waitForElementVisibleByXpath(WebDriver driver, String locator, long TimeOutInSeconds)  {
-    WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(TimeOutInSeconds));
+    By by = LocatorCompiler.compile(locator);
+    WebDriverWait wait = new DeadlineWait(driver, Duration.ofSeconds(
+        LocatorTimings.getInstance().timeoutSeconds(by.toString(), (int) TimeOutInSeconds)));
 
 
+    long start = System.nanoTime();
     try {
-      return wait.until(ExpectedConditions.visibilityOfElementLocated(By.xpath(locator)));
+      WebElement element = wait.until(ExpectedConditions.visibilityOfElementLocated(by));
+      LocatorTimings.getInstance().recordAppearance(by.toString(), millisSince(start));
+      return element;
     } catch (Exception e) {
+      if (e instanceof TimeoutException) {
+        LocatorTimings.getInstance().recordTimeout(by.toString(), millisSince(start));
+      }
       return  null;
     }
   }
@@ -190,13 +331,21 @@ public class WaitTool {
    *         (if the timeout is reached)
    */
   public static WebElement waitForElementVisibleByWebElement(WebDriver driver, WebElement element, long TimeOutInSeconds)  {
-    WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(TimeOutInSeconds));
+    String locator = locatorOf(element);
+    WebDriverWait wait = new DeadlineWait(driver, Duration.ofSeconds(
+        LocatorTimings.getInstance().timeoutSeconds(locator, (int) TimeOutInSeconds)));
 
 
+    long start = System.nanoTime();
     try {
 
-      return wait.until(ExpectedConditions.visibilityOf(element));
+      WebElement visible = wait.until(ExpectedConditions.visibilityOf(element));
+      LocatorTimings.getInstance().recordAppearance(locator, millisSince(start));
+      return visible;
     } catch (Exception e) {
+      if (e instanceof TimeoutException) {
+        LocatorTimings.getInstance().recordTimeout(locator, millisSince(start));
+      }
       return  null;
     }
   }
@@ -246,10 +395,15 @@ public class WaitTool {
    */
   public static List<WebElement> waitForListElementsPresent(WebDriver driver, final By by,
       int timeOutInSeconds) {
+    long start = System.nanoTime();
     try {
       List<WebElement> elements;
-      WebDriverWait wait = (WebDriverWait) new WebDriverWait(driver, Duration.ofSeconds(timeOutInSeconds)).ignoring(StaleElementReferenceException.class);
+      WebDriverWait wait = (WebDriverWait) new DeadlineWait(driver, Duration.ofSeconds(timeOutInSeconds),
+          "waitForListElementsPresent " + by).ignoring(StaleElementReferenceException.class);
       elements = wait.until(x -> x.findElements(by));
+      if (!elements.isEmpty()) {
+        LocatorTimings.getInstance().recordAppearance(by.toString(), millisSince(start));
+      }
       // reset implicitlyWait
       driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(DEFAULT_WAIT_4_PAGE));
 
@@ -272,7 +426,7 @@ public class WaitTool {
    */
   public static List<WebElement> waitForListElementsPresentByXpath(WebDriver driver, String locator,
       int timeOutInSeconds) {
-    return waitForListElementsPresent(driver, By.xpath(locator), timeOutInSeconds);
+    return waitForListElementsPresent(driver, LocatorCompiler.compile(locator), timeOutInSeconds);
   }
 
   /**
@@ -289,7 +443,7 @@ public class WaitTool {
    */
   public static List<WebElement> waitForListElementsPresentByXpath(WebDriver driver,
       String locator) {
-    return waitForListElementsPresent(driver, By.xpath(locator), DEFAULT_WAIT_4_ELEMENT);
+    return waitForListElementsPresent(driver, LocatorCompiler.compile(locator), DEFAULT_WAIT_4_ELEMENT);
   }
 
   /**
@@ -313,7 +467,7 @@ public class WaitTool {
     WebElement element;
     try {
       driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS); //nullify implicitlyWait()
-      new WebDriverWait(driver, Duration.ofSeconds(timeOutInSeconds)) {
+      new DeadlineWait(driver, Duration.ofSeconds(timeOutInSeconds)) {
       }.until(driverObject -> {
         driverObject.navigate().refresh(); //refresh the page ****************
         return isElementPresentAndDisplay(driverObject, by);
@@ -323,7 +477,7 @@ public class WaitTool {
       driver.manage().timeouts().implicitlyWait(DEFAULT_WAIT_4_PAGE, TimeUnit.SECONDS);
       return element; //return the element
     } catch (Exception e) {
-      e.printStackTrace();
+      log.error("Element " + by + " did not appear after refreshing the page", e);
     }
     return null;
   }
@@ -343,7 +497,7 @@ public class WaitTool {
     boolean isPresent = false;
     try {
       driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS); //nullify implicitlyWait()
-      new WebDriverWait(driver, Duration.ofSeconds(timeOutInSeconds)) {
+      new DeadlineWait(driver, Duration.ofSeconds(timeOutInSeconds)) {
       }.until(driverObject -> {
         //is the Text in the DOM
         return isTextPresent(driverObject, by, text);
@@ -373,7 +527,7 @@ public class WaitTool {
     boolean jscondition = false;
     try {
       driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS); //nullify implicitlyWait()
-      new WebDriverWait(driver, Duration.ofSeconds(timeOutInSeconds)) {
+      new DeadlineWait(driver, Duration.ofSeconds(timeOutInSeconds)) {
       }.until(
           (driverObject -> (Boolean) ((JavascriptExecutor) driverObject).executeScript(javaScript))
       );
@@ -399,7 +553,7 @@ public class WaitTool {
     boolean jqueryCondition = false;
     try {
       driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS); //nullify implicitlyWait()
-      new WebDriverWait(driver, Duration.ofSeconds(timeOutInSeconds)) {
+      new DeadlineWait(driver, Duration.ofSeconds(timeOutInSeconds)) {
       }.until(
           driverObject -> (Boolean) ((JavascriptExecutor) driverObject)
               .executeScript("return jQuery.active == 0"));
@@ -539,10 +693,17 @@ public class WaitTool {
    * @param seconds - Number of seconds to make cease thread to sleep.
    */
   public static void sleep(long seconds) {
-    try {
-      Thread.sleep(seconds * 1000);
+    long millis = TestDeadline.clamp(Duration.ofSeconds(seconds), "sleep").toMillis();
+    long start = System.nanoTime();
+    FrameworkEvents.Wait event = FrameworkEvents.beginWait("sleep");
+    try (TraceTimeline.Span ignored = TraceTimeline.span("wait", "sleep")) {
+      Thread.sleep(millis);
     } catch (InterruptedException e) {
       log.error("Exception thrown by sleep", e);
+    } finally {
+      TestDeadline.charge("sleep", start);
+      WaitAttribution.getInstance().record("sleep", start, WaitAttribution.Outcome.SUCCESS);
+      FrameworkEvents.endWait(event, WaitAttribution.Outcome.SUCCESS);
     }
   }
 
@@ -553,17 +714,128 @@ public class WaitTool {
    * @param milliseconds - Number of milliseconds to make cease thread to sleep.
    */
   public static void sleepShort(long milliseconds) {
-    try {
-      Thread.sleep(milliseconds);
+    long millis = TestDeadline.clamp(Duration.ofMillis(milliseconds), "sleep").toMillis();
+    long start = System.nanoTime();
+    FrameworkEvents.Wait event = FrameworkEvents.beginWait("sleep");
+    try (TraceTimeline.Span ignored = TraceTimeline.span("wait", "sleep")) {
+      Thread.sleep(millis);
     } catch (InterruptedException e) {
       log.error("Exception thrown by sleep", e);
+    } finally {
+      TestDeadline.charge("sleep", start);
+      WaitAttribution.getInstance().record("sleep", start, WaitAttribution.Outcome.SUCCESS);
+      FrameworkEvents.endWait(event, WaitAttribution.Outcome.SUCCESS);
+    }
+  }
+
+  /**
+   * Waits for the page to settle: document loaded, no fetch/XHR in flight and the DOM quiet
+   * for quietMillis. Requests older than settleMaxRequestMillis are ignored. The whole wait runs
+   * inside the browser as a single async script call.
+   *
+   * @param driver The driver object to be used
+   * @param quietMillis how long the DOM and network must be quiet
+   * @param timeOutInSeconds The time in seconds to wait until giving up
+   * @return true if the page settled, false on timeout or if the script could not run
+   */
+  public static boolean waitForPageToSettle(WebDriver driver, long quietMillis, int timeOutInSeconds) {
+    long timeoutMillis = TestDeadline.clamp(Duration.ofSeconds(timeOutInSeconds), "waitForPageToSettle").toMillis();
+    long start = System.nanoTime();
+    WaitAttribution.Outcome outcome = WaitAttribution.Outcome.ERROR;
+    FrameworkEvents.Wait event = FrameworkEvents.beginWait("waitForPageToSettle");
+    Duration scriptTimeout = null;
+    try (TraceTimeline.Span ignored = TraceTimeline.span("wait", "waitForPageToSettle")) {
+      scriptTimeout = driver.manage().timeouts().getScriptTimeout();
+      driver.manage().timeouts().scriptTimeout(Duration.ofMillis(timeoutMillis + 2000));
+      Object settled = ((JavascriptExecutor) driver).executeAsyncScript(PAGE_SETTLED_SCRIPT, quietMillis,
+          timeoutMillis, SETTLE_MAX_REQUEST_MILLIS);
+      outcome = Boolean.TRUE.equals(settled) ? WaitAttribution.Outcome.SUCCESS : WaitAttribution.Outcome.TIMEOUT;
+      return Boolean.TRUE.equals(settled);
+    } catch (Exception e) {
+      log.warn("Caught exception while waiting for the page to settle.", e);
+      return false;
+    } finally {
+      restoreScriptTimeout(driver, scriptTimeout);
+      TestDeadline.charge("waitForPageToSettle", start);
+      WaitAttribution.getInstance().record("waitForPageToSettle", start, outcome);
+      FrameworkEvents.endWait(event, outcome);
+    }
+  }
+
+  /**
+   * Checks once, after the page has settled, that no element matches the locator.
+   * Unlike waiting for presence this returns as soon as the page is quiet instead of
+   * burning the full timeout when the element is, as expected, not there.
+   *
+   * @param driver The driver object to be used
+   * @param by selector that should not match anything
+   * @param quietMillis how long the DOM and network must be quiet before checking
+   * @param timeOutInSeconds The time in seconds to wait for the page to settle
+   * @return true if no element matches
+   */
+  public static boolean waitForElementAbsent(WebDriver driver, final By by, long quietMillis,
+      int timeOutInSeconds) {
+    if (!waitForPageToSettle(driver, quietMillis, timeOutInSeconds)) {
+      log.warn("Page did not settle within {}s, checking absence of {} anyway", timeOutInSeconds, by);
+    }
+    nullifyImplicitWait(driver);
+    try {
+      return driver.findElements(by).isEmpty();
+    } finally {
+      driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(DEFAULT_WAIT_4_PAGE));
+    }
+  }
+
+  /**
+   * Waits until the element's position and size stay the same for a number of animation frames.
+   * The check runs inside the page as a single async script call instead of polling getLocation().
+   *
+   * @param driver The driver object to be used
+   * @param element element to watch
+   * @param frames number of consecutive frames the bounding box must not change
+   * @param timeOutInSeconds The time in seconds to wait until giving up
+   * @return true if the element became stable, false on timeout or if it left the document
+   * @throws WebDriverException if the script could not run, e.g. the element is stale
+   */
+  public static boolean waitForElementToBeStable(WebDriver driver, WebElement element, int frames,
+      int timeOutInSeconds) {
+    long timeoutMillis = TestDeadline.clamp(Duration.ofSeconds(timeOutInSeconds), "waitForElementToBeStable")
+        .toMillis();
+    long start = System.nanoTime();
+    WaitAttribution.Outcome outcome = WaitAttribution.Outcome.ERROR;
+    FrameworkEvents.Wait event = FrameworkEvents.beginWait("waitForElementToBeStable");
+    Duration scriptTimeout = null;
+    try (TraceTimeline.Span ignored = TraceTimeline.span("wait", "waitForElementToBeStable")) {
+      scriptTimeout = driver.manage().timeouts().getScriptTimeout();
+      driver.manage().timeouts().scriptTimeout(Duration.ofMillis(timeoutMillis + 2000));
+      Object stable = ((JavascriptExecutor) driver).executeAsyncScript(ELEMENT_STABLE_SCRIPT, element, frames,
+          timeoutMillis);
+      outcome = Boolean.TRUE.equals(stable) ? WaitAttribution.Outcome.SUCCESS : WaitAttribution.Outcome.TIMEOUT;
+      return Boolean.TRUE.equals(stable);
+    } finally {
+      restoreScriptTimeout(driver, scriptTimeout);
+      TestDeadline.charge("waitForElementToBeStable", start);
+      WaitAttribution.getInstance().record("waitForElementToBeStable " + locatorOf(element), start, outcome);
+      FrameworkEvents.endWait(event, outcome);
+    }
+  }
+
+  /** Puts back the session's async script timeout changed by an in-page wait. */
+  private static void restoreScriptTimeout(WebDriver driver, Duration scriptTimeout) {
+    if (scriptTimeout == null) {
+      return;
+    }
+    try {
+      driver.manage().timeouts().scriptTimeout(scriptTimeout);
+    } catch (WebDriverException e) {
+      log.debug("Unable to restore the script timeout.", e);
     }
   }
 
   public static void waitForPageToLoad(WebDriver driverParallel)
   {
     try {
-      new WebDriverWait(driverParallel,  Duration.ofSeconds(Integer.parseInt("10"))).until((ExpectedCondition<Boolean>) wd ->
+      new DeadlineWait(driverParallel,  Duration.ofSeconds(Integer.parseInt("10"))).until((ExpectedCondition<Boolean>) wd ->
               ((JavascriptExecutor) wd).executeScript("return document.readyState").equals("complete"));
     } catch (Exception e) {
 